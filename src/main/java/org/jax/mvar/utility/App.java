@@ -1,14 +1,23 @@
 package org.jax.mvar.utility;
 
 import org.jax.mvar.utility.converter.VCFConverter;
+import org.jax.mvar.utility.insert.DictionaryCache;
+import org.jax.mvar.utility.insert.ParallelInsertion;
 import org.jax.mvar.utility.insert.VariantInsertion;
 import org.jax.mvar.utility.insert.VariantStrainInsertion;
+import org.jax.mvar.utility.insert.VariantStrainRows;
 import org.jax.mvar.utility.insert.VariantTranscriptInsertion;
+import org.jax.mvar.utility.insert.WriterBackend;
 import org.jax.mvar.utility.model.Variant;
+import org.jax.mvar.utility.parser.CanonicalChecker;
+import org.jax.mvar.utility.parser.CanonicalKeyIndex;
 import org.jax.mvar.utility.parser.MGIChecker;
+import org.jax.mvar.utility.parser.Region;
+import org.jax.mvar.utility.parser.VcfIndex;
 
 import java.io.*;
 import java.util.*;
+import java.util.function.Supplier;
 
 
 public class App {
@@ -33,9 +42,15 @@ public class App {
             case "INSERT":
                 arguments.put("type", "INSERT");
                 break;
+            case "INDEX":
+                arguments.put("type", "INDEX");
+                break;
+            case "CANON_INDEX":
+                arguments.put("type", "CANON_INDEX");
+                break;
             default:
                 throw new IllegalStateException("Unexpected command type: " + args[0] + ". " +
-                        "Please use INSERT, REL, GENO, MGI or CONVERT as the first parameter.");
+                        "Please use INSERT, REL, GENO, MGI, INDEX, CANON_INDEX or CONVERT as the first parameter.");
         }
         // check and load parameters for given command
         arguments.put("batch_size", 10000);
@@ -46,6 +61,22 @@ public class App {
         arguments.put("data_path", "");
         arguments.put("imputed", (byte)0);
         arguments.put("header_path", "");
+        arguments.put("threads", 1);
+        arguments.put("file_threads", 1);
+        arguments.put("writer", "jdbc");
+        arguments.put("staging_dir", "");
+        arguments.put("region", "");
+        arguments.put("shards", 0);
+        arguments.put("dict_refresh", 0);
+        arguments.put("canon_threads", 4);
+        arguments.put("canon_bloom", false);
+        arguments.put("canon_index", "");
+        arguments.put("rebuild", false);
+        arguments.put("pool_size", 0);
+        arguments.put("adaptive_batch", false);
+        arguments.put("progress_file", "");
+        arguments.put("packed", false);
+        arguments.put("with_strains", false);
 
         for (int i=0; i < args.length; i++) {
             if (args[i].startsWith("-")) {
@@ -76,6 +107,54 @@ public class App {
                     case "-header_path":
                         arguments.put("header_path", args[i+1]);
                         break;
+                    case "-threads":
+                        arguments.put("threads", Integer.valueOf(args[i+1]));
+                        break;
+                    case "-file_threads":
+                        arguments.put("file_threads", Integer.valueOf(args[i+1]));
+                        break;
+                    case "-writer":
+                        arguments.put("writer", args[i+1]);
+                        break;
+                    case "-staging_dir":
+                        arguments.put("staging_dir", args[i+1]);
+                        break;
+                    case "-region":
+                        arguments.put("region", args[i+1]);
+                        break;
+                    case "-shards":
+                        arguments.put("shards", Integer.valueOf(args[i+1]));
+                        break;
+                    case "-dict_refresh":
+                        arguments.put("dict_refresh", Integer.valueOf(args[i+1]));
+                        break;
+                    case "-canon_threads":
+                        arguments.put("canon_threads", Integer.valueOf(args[i+1]));
+                        break;
+                    case "-canon_bloom":
+                        arguments.put("canon_bloom", true);
+                        break;
+                    case "-canon_index":
+                        arguments.put("canon_index", args[i+1]);
+                        break;
+                    case "-rebuild":
+                        arguments.put("rebuild", true);
+                        break;
+                    case "-pool_size":
+                        arguments.put("pool_size", Integer.valueOf(args[i+1]));
+                        break;
+                    case "-adaptive_batch":
+                        arguments.put("adaptive_batch", true);
+                        break;
+                    case "-progress_file":
+                        arguments.put("progress_file", args[i+1]);
+                        break;
+                    case "-packed":
+                        arguments.put("packed", true);
+                        break;
+                    case "-with_strains":
+                        arguments.put("with_strains", true);
+                        break;
                     default:
                         throw new IllegalStateException("Unexpected parameter: " + args[0]);
                 }
@@ -85,19 +164,50 @@ public class App {
     }
 
     public static void main(String[] args) {
-        VariantInsertion insertService = new VariantInsertion();
         Map<String, Object> arguments = cmdArgsParser(args);
         try {
             String type = (String) arguments.get("type");
             int batchSize = (int) arguments.get("batch_size");
+            // with -adaptive_batch, -batch_size is the upper bound of the batch size
+            boolean adaptiveBatch = (boolean) arguments.get("adaptive_batch");
             int startId = (int) arguments.get("start_id");
             int stopId = (int) arguments.get("stop_id");
             String path = (String) arguments.get("data_path");
             String headerFilePath = (String) arguments.get("header_path");
+            int threads = (int) arguments.get("threads");
+            WriterBackend writerBackend = WriterBackend.fromName((String) arguments.get("writer"));
+            String stagingDirPath = (String) arguments.get("staging_dir");
+            File stagingDir = stagingDirPath.isEmpty() ? null : new File(stagingDirPath);
+            String regionStr = (String) arguments.get("region");
+            Region region = regionStr.isEmpty() ? null : Region.parse(regionStr);
+            int shards = (int) arguments.get("shards");
+            // size of the connection pool shared by the command, by default the pool_size property of config.properties
+            int poolSize = (int) arguments.get("pool_size");
+            if (poolSize > 0)
+                Config.setPoolSize(poolSize);
             if (type.equals("MGI")) {         // Check MGI vcf data against the MVAR database for duplicates
-                // check MGI variants in DB
+                // check MGI variants in DB, the lookups using -canon_threads connections of the pool
+                int canonThreads = (int) arguments.get("canon_threads");
+                int neededConnections = canonThreads + 1;
+                if (Config.getPoolSize() < neededConnections) {
+                    System.out.println("The connection pool is increased to " + neededConnections + " connections.");
+                    Config.setPoolSize(neededConnections);
+                }
                 MGIChecker checker = new MGIChecker();
-                checker.loadVCF(new File(path));
+                checker.loadVCF(new File(path), region, threads, batchSize, canonThreads);
+            } else if (type.equals("INDEX")) {   // Index bgzipped VCF files for region reads
+                File f = new File(path);
+                File[] files = f.isDirectory() ? f.listFiles() : new File[]{f};
+                assert files != null;
+                Arrays.sort(files);
+                for (File file : files) {
+                    if (file.isFile() && file.getName().endsWith(".gz")) {
+                        File indexFile = VcfIndex.build(file, threads).write(file);
+                        System.out.println("Index written to " + indexFile.getPath());
+                    }
+                }
+            } else if (type.equals("CANON_INDEX")) {   // Synchronize and verify (or rebuild) a canonical key index
+                CanonicalKeyIndex.verifyOrRebuild(new File(path), (boolean) arguments.get("rebuild"));
             } else if (type.equals("CONVERT")) {   // Convert CSV to VCF format
                 try {
                     // Read variant csv file
@@ -109,34 +219,89 @@ public class App {
                     System.out.println(e.getMessage());
                 }
             } else if (type.equals("INSERT")){
-                boolean checkForCanon = (boolean) arguments.get("check_canon");
-                File headerFile = new File(headerFilePath);
-                File f = new File(path);
-                assert f != null;
-                if (f.isDirectory()) {
-                    File[] files = new File(f.getPath()).listFiles();
-                    assert files != null;
-                    Arrays.sort(files);
-                    for (File file : files) {
-                        if (file.isFile() && (file.getName().endsWith(".gz") || (file.getName().endsWith(".vcf"))))
-                            insertService.loadVCF(file, headerFile, batchSize, false);
-                    }
+                // a canonical key index implies the canonical check
+                String canonIndexPath = (String) arguments.get("canon_index");
+                File canonIndexFile = canonIndexPath.isEmpty() ? null : new File(canonIndexPath);
+                boolean checkForCanon = (boolean) arguments.get("check_canon") || canonIndexFile != null;
+                // gene/synonym/transcript dictionaries loaded once and shared by all the files
+                int dictRefresh = (int) arguments.get("dict_refresh");
+                DictionaryCache dictionaryCache = new DictionaryCache(dictRefresh * 60 * 1000L);
+                // the canonical check is shared by all the files, so that the variants of one file are known to the others
+                int canonThreads = (int) arguments.get("canon_threads");
+                boolean canonBloom = (boolean) arguments.get("canon_bloom");
+                // one connection per concurrent file (or shard) plus the connections of the canonical check
+                int fileThreads = (int) arguments.get("file_threads");
+                int neededConnections = Math.max(Math.max(fileThreads, shards), 1) + (checkForCanon ? canonThreads : 0);
+                if (Config.getPoolSize() < neededConnections) {
+                    System.out.println("The connection pool is increased to " + neededConnections + " connections.");
+                    Config.setPoolSize(neededConnections);
+                }
+                // with -with_strains, the variant strain relationships are written by INSERT (no genotype_temp, no GENO)
+                VariantStrainRows strainRows = null;
+                if ((boolean) arguments.get("with_strains")) {
+                    String strainFilePath = (String) arguments.get("strain_path");
+                    if (strainFilePath == null)
+                        throw new Exception("-with_strains requires -strain_path.");
+                    strainRows = VariantStrainInsertion.prepareInsertStrainRows(strainFilePath, (byte) arguments.get("imputed"));
+                }
+                final VariantStrainRows insertStrainRows = strainRows;
+                try (CanonicalChecker canonicalChecker = checkForCanon ? CanonicalChecker.open(canonThreads, canonBloom, canonIndexFile) : null) {
+                    // each file gets its own configured insertion service
+                    Supplier<VariantInsertion> insertionFactory = () -> {
+                        VariantInsertion insertService = new VariantInsertion();
+                        insertService.setDictionaryCache(dictionaryCache);
+                        insertService.setCanonicalChecker(canonicalChecker);
+                        insertService.setThreads(threads);
+                        insertService.setAdaptiveBatch(adaptiveBatch);
+                        insertService.setWriterBackend(writerBackend, stagingDir);
+                        insertService.setStrainRows(insertStrainRows);
+                        return insertService;
+                    };
+                    File headerFile = new File(headerFilePath);
+                    File f = new File(path);
+                    assert f != null;
+                    if (f.isDirectory()) {
+                        if (region != null || shards > 0)
+                            throw new Exception("-region and -shards can only be used with a single bgzipped and indexed file.");
+                        File[] files = new File(f.getPath()).listFiles();
+                        assert files != null;
+                        Arrays.sort(files);
+                        List<File> vcfFiles = new ArrayList<>();
+                        for (File file : files) {
+                            if (file.isFile() && (file.getName().endsWith(".gz") || (file.getName().endsWith(".vcf"))))
+                                vcfFiles.add(file);
+                        }
+                        ParallelInsertion.loadVCFs(vcfFiles, headerFile, batchSize, checkForCanon, fileThreads, insertionFactory);
 
-                } else if (f.isFile() && (f.getName().endsWith(".gz") || (f.getName().endsWith(".vcf")))) {
-                    insertService.loadVCF(f, f, batchSize, checkForCanon);
-                } else {
-                    throw new Exception("Could not find file or directory : " + f.getPath());
+                    } else if (f.isFile() && shards > 0) {
+                        // the file is split into regions of similar size loaded concurrently
+                        List<Region> regions = VcfIndex.load(f).getShards(shards);
+                        ParallelInsertion.loadRegions(f, f, regions, batchSize, checkForCanon, shards, insertionFactory);
+                    } else if (f.isFile() && (f.getName().endsWith(".gz") || (f.getName().endsWith(".vcf")))) {
+                        insertionFactory.get().loadVCF(f, f, region, batchSize, checkForCanon);
+                    } else {
+                        throw new Exception("Could not find file or directory : " + f.getPath());
+                    }
                 }
             } else if (type.equals("REL")){
                 String sourceName = (String) arguments.get("source_name");
-                VariantTranscriptInsertion.insertVariantTranscriptSourceRel(batchSize, startId, sourceName);
+                VariantTranscriptInsertion.insertVariantTranscriptSourceRel(batchSize, adaptiveBatch, startId, sourceName);
             } else if (type.equals("GENO")){
                 String strainFilePath = (String) arguments.get("strain_path");
                 byte imputed = (byte) arguments.get("imputed");
-                VariantStrainInsertion.insertVariantStrainRelationships(batchSize, startId, stopId, strainFilePath, imputed);
+                // one connection per worker
+                if (Config.getPoolSize() < threads) {
+                    System.out.println("The connection pool is increased to " + threads + " connections.");
+                    Config.setPoolSize(threads);
+                }
+                String progressPath = (String) arguments.get("progress_file");
+                File progressFile = progressPath.isEmpty() ? null : new File(progressPath);
+                VariantStrainInsertion.insertVariantStrainRelationships(batchSize, adaptiveBatch, startId, stopId, strainFilePath, imputed, threads, progressFile, (boolean) arguments.get("packed"));
             }
         } catch (Exception exc) {
             System.out.println(exc.getMessage());
+        } finally {
+            Config.closeConnectionPool();
         }
 
     }
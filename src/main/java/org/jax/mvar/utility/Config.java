@@ -2,28 +2,43 @@ package org.jax.mvar.utility;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
 import java.util.Properties;
 
 public class Config {
 
+    private static final int DEFAULT_POOL_SIZE = 8;
+    private static final long POOL_BORROW_TIMEOUT_MILLIS = 10 * 60 * 1000;
+
+    // config.properties is only read once
+    private static Properties properties;
+    private static Integer poolSize;
+    private static ConnectionPool pool;
+
     private String url;
     private String user;
     private String password;
 
     public Config() {
-        try (InputStream input = getClass()
-                .getClassLoader().getResourceAsStream("config.properties")) {
-            Properties prop = new Properties();
-            // load a properties file
-            prop.load(input);
-            // get the property value
-            this.url = prop.getProperty("url");
-            this.user = prop.getProperty("user");
-            this.password = prop.getProperty("password");
-
-        } catch (IOException ex) {
-            ex.printStackTrace();
+        Properties prop = getProperties();
+        this.url = prop.getProperty("url");
+        this.user = prop.getProperty("user");
+        this.password = prop.getProperty("password");
+    }
+
+    private static synchronized Properties getProperties() {
+        if (properties == null) {
+            properties = new Properties();
+            try (InputStream input = Config.class.getClassLoader().getResourceAsStream("config.properties")) {
+                // load a properties file
+                properties.load(input);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
         }
+        return properties;
     }
 
     public String getUrl() {
@@ -38,4 +53,68 @@ public class Config {
         return password;
     }
 
-}
\ No newline at end of file
+    /**
+     * Set the size of the connection pool, overriding the pool_size property. Needs to be called before the
+     * first connection is borrowed.
+     *
+     * @param size maximum number of connections in use at a time
+     */
+    public static synchronized void setPoolSize(int size) {
+        if (pool != null)
+            throw new IllegalStateException("The connection pool is already created with " + pool.getMaxSize() + " connections.");
+        poolSize = size;
+    }
+
+    /**
+     * @return size of the connection pool: the size set with setPoolSize, the pool_size property or 8 by default
+     */
+    public static synchronized int getPoolSize() {
+        if (pool != null)
+            return pool.getMaxSize();
+        if (poolSize != null)
+            return poolSize;
+        String property = getProperties().getProperty("pool_size");
+        return property == null || property.trim().isEmpty() ? DEFAULT_POOL_SIZE : Integer.parseInt(property.trim());
+    }
+
+    /**
+     * @return the connection pool shared by all the commands, created on first use
+     */
+    public static synchronized ConnectionPool getConnectionPool() {
+        if (pool == null) {
+            final Config config = new Config();
+            final Properties driverProperties = new Properties();
+            if (config.getUser() != null)
+                driverProperties.setProperty("user", config.getUser());
+            if (config.getPassword() != null)
+                driverProperties.setProperty("password", config.getPassword());
+            // statement caching, unless already configured in the url
+            for (String[] cacheProperty : new String[][]{{"cachePrepStmts", "true"}, {"prepStmtCacheSize", "350"}, {"prepStmtCacheSqlLimit", "2048"}}) {
+                if (!config.getUrl().contains(cacheProperty[0] + "="))
+                    driverProperties.setProperty(cacheProperty[0], cacheProperty[1]);
+            }
+            pool = new ConnectionPool(getPoolSize(), POOL_BORROW_TIMEOUT_MILLIS,
+                    () -> DriverManager.getConnection(config.getUrl(), driverProperties));
+        }
+        return pool;
+    }
+
+    /**
+     * Borrow a connection from the shared connection pool
+     *
+     * @return a connection, given back to the pool when closed
+     * @throws SQLException
+     */
+    public static Connection getConnection() throws SQLException {
+        return getConnectionPool().getConnection();
+    }
+
+    /**
+     * Close the idle connections of the shared pool, at the end of the run
+     */
+    public static synchronized void closeConnectionPool() {
+        if (pool != null)
+            pool.close();
+    }
+
+}
@@ -0,0 +1,223 @@
+package org.jax.mvar.utility;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Small pool of JDBC connections shared by all the commands (see Config.getConnection).
+ *
+ * Connections are borrowed with getConnection and given back to the pool when closed. A connection that was idle
+ * for a while is validated before being handed out, and replaced if it is no longer valid. Connections given back
+ * with autocommit off are rolled back and set back to autocommit. The session variables turned off by the insertions
+ * (FOREIGN_KEY_CHECKS and UNIQUE_CHECKS, see VariantInsertion.innoDBSetOptions) are turned back on when a connection
+ * used to run statements is given back, so that a borrower failing to restore them can't hand them over to the next
+ * one; a connection that can't be reset is closed. Since the physical connections are kept, the
+ * statements cached by the driver (cachePrepStmts) are reused across borrowers.
+ * At most maxSize connections are in use at a time: getConnection waits for a connection to be given back.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    /**
+     * Creates the physical connections of the pool
+     */
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    private static final long VALIDATION_IDLE_MILLIS = 30 * 1000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+    static final String SESSION_RESET = "SET FOREIGN_KEY_CHECKS = 1, UNIQUE_CHECKS = 1";
+
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final ConnectionFactory factory;
+    private final Semaphore permits;
+    // idle connections, the most recently used first
+    private final LinkedBlockingDeque<IdleConnection> idle = new LinkedBlockingDeque<>();
+    private volatile boolean closed = false;
+
+    /**
+     * @param maxSize             maximum number of connections in use at a time
+     * @param borrowTimeoutMillis maximum time getConnection waits for a connection
+     * @param factory             creates the physical connections
+     */
+    public ConnectionPool(int maxSize, long borrowTimeoutMillis, ConnectionFactory factory) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("The pool size needs to be at least 1, was " + maxSize);
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.factory = factory;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Borrow a connection. The connection is given back to the pool when it is closed.
+     *
+     * @return a connection, to be closed by the caller
+     * @throws SQLException if no connection could be created or none was given back in time
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed)
+            throw new SQLException("The connection pool is closed.");
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS))
+                throw new SQLException("No connection available after " + borrowTimeoutMillis / 1000 + "s: all the "
+                        + maxSize + " connections of the pool are in use, the pool size can be increased with -pool_size.");
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection.", exc);
+        }
+        try {
+            IdleConnection candidate;
+            while ((candidate = idle.pollFirst()) != null) {
+                if (System.currentTimeMillis() - candidate.since < VALIDATION_IDLE_MILLIS || isValid(candidate.connection))
+                    return wrap(candidate.connection);
+                closeQuietly(candidate.connection);
+            }
+            return wrap(factory.create());
+        } catch (SQLException | RuntimeException exc) {
+            permits.release();
+            throw exc;
+        }
+    }
+
+    private static boolean isValid(Connection connection) {
+        try {
+            return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException exc) {
+            return false;
+        }
+    }
+
+    private Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                new PooledConnectionHandler(connection));
+    }
+
+    /**
+     * Give a connection back to the pool
+     */
+    private void release(Connection connection, boolean statementsRun) {
+        try {
+            if (closed || connection.isClosed()) {
+                closeQuietly(connection);
+                return;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            if (statementsRun) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute(SESSION_RESET);
+                }
+            }
+            idle.offerFirst(new IdleConnection(connection));
+        } catch (SQLException exc) {
+            // the connection is not reusable
+            closeQuietly(connection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * @return maximum number of connections in use at a time
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return number of idle connections kept by the pool
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Close the idle connections. The connections in use are closed when they are given back.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        IdleConnection candidate;
+        while ((candidate = idle.pollFirst()) != null)
+            closeQuietly(candidate.connection);
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException exc) {
+            // nothing to do, the connection is discarded
+        }
+    }
+
+    private static class IdleConnection {
+        private final Connection connection;
+        private final long since = System.currentTimeMillis();
+
+        private IdleConnection(Connection connection) {
+            this.connection = connection;
+        }
+    }
+
+    /**
+     * Connection handed out by the pool: close gives the connection back to the pool
+     */
+    private class PooledConnectionHandler implements InvocationHandler {
+        private final Connection connection;
+        private boolean released = false;
+        private boolean statementsRun = false;
+
+        private PooledConnectionHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    synchronized (this) {
+                        if (!released) {
+                            released = true;
+                            release(connection, statementsRun);
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    synchronized (this) {
+                        return released || connection.isClosed();
+                    }
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled " + connection;
+                default:
+                    synchronized (this) {
+                        if (released)
+                            throw new SQLException("The connection was given back to the pool.");
+                        // the session may be changed by the statements of the borrower
+                        if (method.getName().startsWith("create") || method.getName().startsWith("prepare"))
+                            statementsRun = true;
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException exc) {
+                        throw exc.getCause();
+                    }
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.jax.mvar.utility.insert;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Date;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Batch size controller of the INSERT, REL and GENO commands.
+ *
+ * After each batch is written, the size of the next batches is adjusted so that writing and committing a batch
+ * takes about the target commit latency: the size grows (at most doubling) while the batches are faster than the
+ * target and shrinks when they are slower. When the heap occupancy after the last GC is above the watermark, the
+ * size is halved whatever the latency. The size stays between the minimum and the maximum batch size (-batch_size).
+ * Each decision is logged.
+ *
+ * A fixed sizer (see fixed) always returns the same size. Thread safe: the size can be read by a reader thread and
+ * updated by a writer thread.
+ */
+public class AdaptiveBatchSizer {
+
+    static final long DEFAULT_TARGET_MILLIS = 5000;
+    static final double DEFAULT_HEAP_WATERMARK = 0.8;
+    static final int DEFAULT_MIN_BATCH_SIZE = 100;
+    private static final int INITIAL_BATCH_SIZE = 1000;
+
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long targetNanos;
+    private final double heapWatermark;
+    private final DoubleSupplier heapOccupancy;
+    private int batchSize;
+
+    /**
+     * Adaptive sizer with the default target latency (5s) and heap watermark (80%)
+     *
+     * @param maxBatchSize upper bound of the batch size
+     */
+    public AdaptiveBatchSizer(int maxBatchSize) {
+        this(Math.min(DEFAULT_MIN_BATCH_SIZE, maxBatchSize), maxBatchSize, DEFAULT_TARGET_MILLIS, DEFAULT_HEAP_WATERMARK,
+                AdaptiveBatchSizer::getHeapOccupancy);
+    }
+
+    /**
+     * @param minBatchSize  lower bound of the batch size
+     * @param maxBatchSize  upper bound of the batch size
+     * @param targetMillis  target time to write and commit one batch
+     * @param heapWatermark heap occupancy (0 to 1) above which the batch size is halved
+     * @param heapOccupancy supplies the current heap occupancy
+     */
+    AdaptiveBatchSizer(int minBatchSize, int maxBatchSize, long targetMillis, double heapWatermark, DoubleSupplier heapOccupancy) {
+        if (minBatchSize < 1 || maxBatchSize < minBatchSize)
+            throw new IllegalArgumentException("Invalid batch size bounds: " + minBatchSize + " to " + maxBatchSize);
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.targetNanos = targetMillis * 1_000_000L;
+        this.heapWatermark = heapWatermark;
+        this.heapOccupancy = heapOccupancy;
+        this.batchSize = Math.max(minBatchSize, Math.min(INITIAL_BATCH_SIZE, maxBatchSize));
+    }
+
+    /**
+     * @param batchSize batch size
+     * @return a sizer always returning the given batch size
+     */
+    public static AdaptiveBatchSizer fixed(int batchSize) {
+        return new AdaptiveBatchSizer(batchSize, batchSize, DEFAULT_TARGET_MILLIS, 1, () -> 0);
+    }
+
+    /**
+     * @return the size of the next batch
+     */
+    public synchronized int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Adjust the batch size after a batch was written
+     *
+     * @param rows        number of rows of the batch
+     * @param commitNanos time spent writing and committing the batch
+     * @return the size of the next batch
+     */
+    public synchronized int update(int rows, long commitNanos) {
+        if (minBatchSize == maxBatchSize || rows <= 0)
+            return batchSize;
+        int previous = batchSize;
+        double heap = heapOccupancy.getAsDouble();
+        String reason;
+        if (heap > heapWatermark) {
+            batchSize = Math.max(minBatchSize, batchSize / 2);
+            reason = String.format("heap at %.0f%% above the %.0f%% watermark", heap * 100, heapWatermark * 100);
+        } else {
+            // size at which a batch would take the target time, at the rate of the last batch
+            double target = (double) targetNanos * rows / Math.max(commitNanos, 1);
+            long next = Math.round(Math.max(previous / 2.0, Math.min(target, previous * 2.0)));
+            batchSize = (int) Math.max(minBatchSize, Math.min(next, maxBatchSize));
+            reason = String.format("%d rows committed in %d ms (target %d ms)", rows, commitNanos / 1_000_000, targetNanos / 1_000_000);
+        }
+        System.out.println("Batch size " + (batchSize > previous ? "increased to " : batchSize < previous ? "decreased to " : "kept at ")
+                + batchSize + ": " + reason + ", " + new Date());
+        return batchSize;
+    }
+
+    /**
+     * @return occupancy of the tenured heap after the last GC (or of the whole heap if not available), 0 to 1
+     */
+    static double getHeapOccupancy() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            // the tenured pool is the heap pool supporting usage thresholds
+            if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported() && pool.isCollectionUsageThresholdSupported()) {
+                MemoryUsage usage = pool.getCollectionUsage();
+                long max = pool.getUsage().getMax();
+                if (usage != null && max > 0)
+                    return (double) usage.getUsed() / max;
+            }
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return (double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+    }
+}
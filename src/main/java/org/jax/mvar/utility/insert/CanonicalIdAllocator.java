@@ -0,0 +1,69 @@
+package org.jax.mvar.utility.insert;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Hands out blocks of canonical ids. One allocator is shared by all the insertion workers of a run
+ * so that workers loading files concurrently never use the same variant_canon_identifier id.
+ *
+ * The canonical id is also used as the variant id and the variant_transcript_temp id, and those rows
+ * are inserted with explicit ids.
+ */
+public class CanonicalIdAllocator {
+
+    private final int firstId;
+    private int nextId;
+
+    /**
+     * @param firstId first available canonical id
+     */
+    public CanonicalIdAllocator(int firstId) {
+        this.firstId = firstId;
+        this.nextId = firstId;
+    }
+
+    /**
+     * Create an allocator starting after the last id of the variant_canon_identifier table
+     * @param connection jdbc connection
+     * @return the allocator
+     * @throws SQLException
+     */
+    public static CanonicalIdAllocator fromDatabase(Connection connection) throws SQLException {
+        String selectLastIdCanonical = "select id from variant_canon_identifier order by id desc limit 1 offset 0;";
+        try (PreparedStatement selectLastCanonicalIdStmt = connection.prepareStatement(selectLastIdCanonical);
+             ResultSet idResult = selectLastCanonicalIdStmt.executeQuery()) {
+            if (!idResult.next()) {
+                return new CanonicalIdAllocator(1);
+            }
+            return new CanonicalIdAllocator(idResult.getInt("id") + 1);
+        }
+    }
+
+    /**
+     * Reserve a block of consecutive ids
+     * @param count number of ids needed
+     * @return the first id of the block
+     */
+    public synchronized int reserve(int count) {
+        int id = nextId;
+        nextId += count;
+        return id;
+    }
+
+    /**
+     * @return first id handed out by this allocator
+     */
+    public int getFirstId() {
+        return firstId;
+    }
+
+    /**
+     * @return the next id that will be handed out
+     */
+    public synchronized int getNextId() {
+        return nextId;
+    }
+}
@@ -0,0 +1,193 @@
+package org.jax.mvar.utility.insert;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory copy of the gene, synonym and transcript dictionaries used to link the inserted variants
+ * (gene.symbol, synonym.name and transcript.primary_identifier to their ids).
+ *
+ * Those tables are not modified by the insertion, so they are loaded once per run, on first use, and looked up
+ * in memory for every batch. One cache can be shared by all the insertion workers of a run.
+ * Gene symbols that are not found are resolved through the gene synonyms, set-wise (one query for all the
+ * unresolved symbols of a batch), and the result, found or not, is kept for the rest of the run.
+ * If a refresh interval is given, the dictionaries are reloaded once they get older than the interval; the new
+ * dictionaries replace the old ones in one step, so a lookup never sees a partially loaded dictionary.
+ */
+public class DictionaryCache {
+
+    // maximum number of synonym ids per gene_synonym query
+    private static final int SYNONYM_CHUNK_SIZE = 1000;
+
+    private final long refreshMillis;
+    private volatile Dictionaries dictionaries;
+
+    /**
+     * Cache loaded once for the whole run
+     */
+    public DictionaryCache() {
+        this(0);
+    }
+
+    /**
+     * @param refreshMillis interval after which the dictionaries are reloaded, 0 to never reload them
+     */
+    public DictionaryCache(long refreshMillis) {
+        this.refreshMillis = refreshMillis;
+    }
+
+    /**
+     * Load the dictionaries if they are not loaded yet, or reload them if they are older than the refresh interval.
+     * Called before each batch.
+     *
+     * @param connection jdbc connection
+     * @throws SQLException
+     */
+    public void refreshIfNeeded(Connection connection) throws SQLException {
+        Dictionaries current = dictionaries;
+        if (current != null && (refreshMillis <= 0 || System.currentTimeMillis() - current.loadTime < refreshMillis))
+            return;
+        synchronized (this) {
+            // another worker may have (re)loaded the dictionaries in the meantime
+            if (dictionaries == current)
+                dictionaries = load(connection);
+        }
+    }
+
+    /**
+     * @param symbol gene symbol
+     * @return the gene id, -1 if there is no gene with this symbol
+     */
+    public int getGeneId(String symbol) {
+        return getDictionaries().genes.getIfAbsent(symbol, -1);
+    }
+
+    /**
+     * Resolve, in one go, the gene ids of the given symbols that are not gene symbols through their synonyms.
+     * Symbols already resolved (found or not) and symbols that are not synonyms cost no query.
+     *
+     * @param connection jdbc connection
+     * @param symbols    gene symbols
+     * @throws SQLException
+     */
+    public void resolveSynonyms(Connection connection, Collection<String> symbols) throws SQLException {
+        Dictionaries current = getDictionaries();
+        // synonym id -> symbol of the symbols to resolve
+        Map<Integer, String> toResolve = new HashMap<>();
+        synchronized (current.synonymGenes) {
+            for (String symbol : symbols) {
+                if (current.genes.containsKey(symbol) || current.synonymGenes.containsKey(symbol))
+                    continue;
+                int synonymId = current.synonyms.getIfAbsent(symbol, -1);
+                if (synonymId == -1)
+                    current.synonymGenes.put(symbol, -1);
+                else
+                    toResolve.put(synonymId, symbol);
+            }
+        }
+        if (toResolve.isEmpty())
+            return;
+
+        ObjectIntHashMap<String> resolved = new ObjectIntHashMap<>(toResolve.size());
+        List<Integer> synonymIds = new ArrayList<>(toResolve.keySet());
+        for (int from = 0; from < synonymIds.size(); from += SYNONYM_CHUNK_SIZE) {
+            List<Integer> chunk = synonymIds.subList(from, Math.min(from + SYNONYM_CHUNK_SIZE, synonymIds.size()));
+            StringBuilder query = new StringBuilder("SELECT synonym_id, gene_synonyms_id FROM gene_synonym WHERE synonym_id IN (");
+            for (int i = 0; i < chunk.size(); i++)
+                query.append(i == 0 ? "?" : ",?");
+            query.append(')');
+            try (PreparedStatement selectStmt = connection.prepareStatement(query.toString())) {
+                for (int i = 0; i < chunk.size(); i++)
+                    selectStmt.setInt(i + 1, chunk.get(i));
+                try (ResultSet result = selectStmt.executeQuery()) {
+                    while (result.next()) {
+                        String symbol = toResolve.get(result.getInt(1));
+                        // the first gene of the synonym is kept
+                        if (!resolved.containsKey(symbol))
+                            resolved.put(symbol, result.getInt(2));
+                    }
+                }
+            }
+        }
+        synchronized (current.synonymGenes) {
+            for (String symbol : toResolve.values())
+                current.synonymGenes.put(symbol, resolved.getIfAbsent(symbol, -1));
+        }
+    }
+
+    /**
+     * @param symbol gene symbol, resolved with resolveSynonyms
+     * @return the id of the gene having this symbol as a synonym, -1 if there is none
+     */
+    public int getGeneIdBySynonym(String symbol) {
+        Dictionaries current = getDictionaries();
+        synchronized (current.synonymGenes) {
+            return current.synonymGenes.getIfAbsent(symbol, -1);
+        }
+    }
+
+    /**
+     * @param primaryIdentifier transcript id without version
+     * @return the transcript id in the DB, -1 if the transcript is unknown
+     */
+    public int getTranscriptId(String primaryIdentifier) {
+        return getDictionaries().transcripts.getIfAbsent(primaryIdentifier, -1);
+    }
+
+    private Dictionaries getDictionaries() {
+        Dictionaries current = dictionaries;
+        if (current == null)
+            throw new IllegalStateException("The dictionaries are not loaded.");
+        return current;
+    }
+
+    private static Dictionaries load(Connection connection) throws SQLException {
+        final StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        Dictionaries loaded = new Dictionaries(selectAll(connection, "gene", "symbol"),
+                selectAll(connection, "synonym", "name"),
+                selectAll(connection, "transcript", "primary_identifier"));
+        System.out.println("Dictionaries loaded in " + stopWatch + ": " + loaded.genes.size() + " genes, "
+                + loaded.synonyms.size() + " synonyms, " + loaded.transcripts.size() + " transcripts, " + new Date());
+        return loaded;
+    }
+
+    private static ObjectIntHashMap<String> selectAll(Connection connection, String tableName, String columnName) throws SQLException {
+        ObjectIntHashMap<String> resultMap = new ObjectIntHashMap<>();
+        try (PreparedStatement selectAllStmt = connection.prepareStatement("SELECT id, " + columnName + " FROM " + tableName);
+             ResultSet result = selectAllStmt.executeQuery()) {
+            while (result.next()) {
+                String value = result.getString(2);
+                if (value != null)
+                    resultMap.put(value, result.getInt(1));
+            }
+        }
+        return resultMap;
+    }
+
+    private static class Dictionaries {
+        private final ObjectIntHashMap<String> genes;
+        private final ObjectIntHashMap<String> synonyms;
+        private final ObjectIntHashMap<String> transcripts;
+        // gene symbols resolved through the synonyms: gene id, or -1 if not found
+        private final ObjectIntHashMap<String> synonymGenes = new ObjectIntHashMap<>();
+        private final long loadTime = System.currentTimeMillis();
+
+        private Dictionaries(ObjectIntHashMap<String> genes, ObjectIntHashMap<String> synonyms, ObjectIntHashMap<String> transcripts) {
+            this.genes = genes;
+            this.synonyms = synonyms;
+            this.transcripts = transcripts;
+        }
+    }
+}
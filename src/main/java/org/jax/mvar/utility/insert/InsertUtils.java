@@ -6,13 +6,13 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 public class InsertUtils {
 
+    // maximum number of strain names per query
+    private static final int STRAIN_CHUNK_SIZE = 1000;
+
     /**
      * Insert into mvar_strain table new strains
      * @param connection
@@ -21,9 +21,9 @@ public class InsertUtils {
      *  and the second is the missing strains
      * @throws SQLException
      */
-    public static List<Map> insertIntoMvarStrain(Connection connection, Map<Integer, String> strainsMap) throws SQLException {
+    public static List<Map<Integer, String>> insertIntoMvarStrain(Connection connection, Map<Integer, String> strainsMap) throws SQLException {
         // result lists maps (the 1rst one is the existingStrains, the second one is the missingStrains
-        List<Map> resultStrainMaps = new LinkedList<>();
+        List<Map<Integer, String>> resultStrainMaps = new LinkedList<>();
         // check if new strains are in the mvar strain table
         // Build the select query
         PreparedStatement selectFromMvarStrain = null;
@@ -102,6 +102,8 @@ public class InsertUtils {
 
     /**
      * Insert mvar Strain-imputed relationships.
+     * The mvar_strain ids of all the strains and the existing relationships of the imputed value are fetched at once,
+     * and the missing relationships are inserted in one batch.
      * @param connection
      * @param missingStrains
      * @param existingStrains
@@ -111,95 +113,74 @@ public class InsertUtils {
     public static void insertMvarStrainImputed(Connection connection, Map<Integer, String> existingStrains, Map<Integer, String> missingStrains, byte imputed) throws SQLException {
 
         // retrieve imputed id
-        int imputedId = -1;
-        PreparedStatement selectFromImputedStmt = null;
-        ResultSet  resultImputedId = null;
-        try {
-            // get the imputed id
-            selectFromImputedStmt = connection.prepareStatement("select id from imputed where imputed=?");
+        int imputedId;
+        try (PreparedStatement selectFromImputedStmt = connection.prepareStatement("select id from imputed where imputed=?")) {
             selectFromImputedStmt.setByte(1, imputed);
-            resultImputedId = selectFromImputedStmt.executeQuery();
-            resultImputedId.next();
-            imputedId =  resultImputedId.getInt("id");
-        } finally {
-            if (resultImputedId != null)
-                resultImputedId.close();
-            if (selectFromImputedStmt != null)
-                selectFromImputedStmt.close();
+            try (ResultSet resultImputedId = selectFromImputedStmt.executeQuery()) {
+                if (!resultImputedId.next())
+                    throw new SQLException("No imputed value " + imputed + " in the imputed table.");
+                imputedId = resultImputedId.getInt("id");
+            }
         }
 
-        // insert existing strain imputed relationship
-        PreparedStatement insertMvarStrainsImputedStmt = null;
-
-        try {
-            // we add the existing mvar strain imputed relationship
-            insertMvarStrainsImputedStmt = connection.prepareStatement("INSERT INTO mvar_strain_imputed (mvar_strain_imputeds_id, imputed_id)  VALUES (?, ?)");
-
-            // check existing strain imputed relationship
-            for (Map.Entry<Integer, String> existingStrain : existingStrains.entrySet()) {
-                PreparedStatement selectFromMvarStrainImputedStmt = null;
-                ResultSet mvarStrainExistingImputedResult = null;
-
-                try {
-                    // get the corresponding mvar_strain id
-                    int mvarStrainId = getMvarStrainId(connection, existingStrain.getValue());
-
-                    selectFromMvarStrainImputedStmt = connection.prepareStatement("select * from mvar_strain_imputed where mvar_strain_imputeds_id=? and imputed_id=?");
-                    selectFromMvarStrainImputedStmt.setInt(1, mvarStrainId);
-                    selectFromMvarStrainImputedStmt.setInt(2, imputedId);
-                    mvarStrainExistingImputedResult = selectFromMvarStrainImputedStmt.executeQuery();
-                    if (!mvarStrainExistingImputedResult.next()) {
-                        // we add the existing mvar strain imputed relationship
-                        insertMvarStrainsImputedStmt.setInt(1, mvarStrainId);
-                        insertMvarStrainsImputedStmt.setInt(2, imputedId);
-                        insertMvarStrainsImputedStmt.addBatch();
-                    }
-                } finally {
-                    if (mvarStrainExistingImputedResult != null)
-                        mvarStrainExistingImputedResult.close();
-                    if (selectFromMvarStrainImputedStmt != null)
-                        selectFromMvarStrainImputedStmt.close();
-                }
+        // mvar_strain ids of all the strains
+        List<String> strainNames = new ArrayList<>(existingStrains.values());
+        strainNames.addAll(missingStrains.values());
+        Map<String, Integer> mvarStrainIds = getMvarStrainIds(connection, strainNames);
+
+        // existing strain imputed relationships
+        Set<Integer> linkedMvarStrainIds = new HashSet<>();
+        try (PreparedStatement selectFromMvarStrainImputedStmt = connection.prepareStatement("select mvar_strain_imputeds_id from mvar_strain_imputed where imputed_id=?")) {
+            selectFromMvarStrainImputedStmt.setInt(1, imputedId);
+            try (ResultSet mvarStrainExistingImputedResult = selectFromMvarStrainImputedStmt.executeQuery()) {
+                while (mvarStrainExistingImputedResult.next())
+                    linkedMvarStrainIds.add(mvarStrainExistingImputedResult.getInt(1));
             }
+        }
 
-            // execute the insertion of existing strains
-            insertMvarStrainsImputedStmt.executeBatch();
-
-            // insert missing strains imputed relationship
-            insertMvarStrainsImputedStmt = connection.prepareStatement("INSERT INTO mvar_strain_imputed (mvar_strain_imputeds_id, imputed_id)  VALUES (?, ?)");
-
-            for (Map.Entry<Integer, String> strain : missingStrains.entrySet()) {
-
-                int mvarStrainId = getMvarStrainId(connection, strain.getValue());
-                insertMvarStrainsImputedStmt.setInt(1, mvarStrainId);
-                insertMvarStrainsImputedStmt.setInt(2, imputedId);
-                insertMvarStrainsImputedStmt.addBatch();
+        // insert the missing relationships
+        int count = 0;
+        try (PreparedStatement insertMvarStrainsImputedStmt = connection.prepareStatement("INSERT INTO mvar_strain_imputed (mvar_strain_imputeds_id, imputed_id)  VALUES (?, ?)")) {
+            for (String strainName : strainNames) {
+                Integer mvarStrainId = mvarStrainIds.get(strainName);
+                if (mvarStrainId == null)
+                    throw new SQLException("Strain " + strainName + " could not be found in the mvar_strain table.");
+                if (linkedMvarStrainIds.add(mvarStrainId)) {
+                    insertMvarStrainsImputedStmt.setInt(1, mvarStrainId);
+                    insertMvarStrainsImputedStmt.setInt(2, imputedId);
+                    insertMvarStrainsImputedStmt.addBatch();
+                    count++;
+                }
             }
-            insertMvarStrainsImputedStmt.executeBatch();
-
-        } finally {
-            if (insertMvarStrainsImputedStmt != null)
-                insertMvarStrainsImputedStmt.close();
+            if (count > 0)
+                insertMvarStrainsImputedStmt.executeBatch();
         }
+        System.out.println(count + " strain imputed relationships added to mvar_strain_imputed table.");
     }
 
-    private static int getMvarStrainId(Connection connection, String strainName) throws SQLException {
-        PreparedStatement selectIdfromMvarStrainsStmt = null;
-        ResultSet mvarStrainIdResult = null;
-        int mvarStrainId;
-        try {
-            // get the corresponding mvar_strain id
-            selectIdfromMvarStrainsStmt = connection.prepareStatement("select id from mvar_strain where name=?");
-            selectIdfromMvarStrainsStmt.setString(1, strainName);
-            mvarStrainIdResult = selectIdfromMvarStrainsStmt.executeQuery();
-            mvarStrainIdResult.next();
-            mvarStrainId = mvarStrainIdResult.getInt("id");
-        } finally {
-            if (mvarStrainIdResult != null)
-                mvarStrainIdResult.close();
-            if (selectIdfromMvarStrainsStmt != null)
-                selectIdfromMvarStrainsStmt.close();
+    /**
+     * @param connection  jdbc connection
+     * @param strainNames strain names
+     * @return the mvar_strain id of each name found (names compared ignoring case as in MySQL)
+     * @throws SQLException
+     */
+    private static Map<String, Integer> getMvarStrainIds(Connection connection, List<String> strainNames) throws SQLException {
+        Map<String, Integer> mvarStrainIds = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int from = 0; from < strainNames.size(); from += STRAIN_CHUNK_SIZE) {
+            List<String> chunk = strainNames.subList(from, Math.min(from + STRAIN_CHUNK_SIZE, strainNames.size()));
+            StringBuilder sql = new StringBuilder("select id, name from mvar_strain where name in (");
+            for (int i = 0; i < chunk.size(); i++)
+                sql.append(i == 0 ? "?" : ",?");
+            sql.append(")");
+            try (PreparedStatement selectIdfromMvarStrainsStmt = connection.prepareStatement(sql.toString())) {
+                for (int i = 0; i < chunk.size(); i++)
+                    selectIdfromMvarStrainsStmt.setString(i + 1, chunk.get(i));
+                try (ResultSet mvarStrainIdResult = selectIdfromMvarStrainsStmt.executeQuery()) {
+                    while (mvarStrainIdResult.next())
+                        mvarStrainIds.putIfAbsent(mvarStrainIdResult.getString("name"), mvarStrainIdResult.getInt("id"));
+                }
+            }
         }
-        return mvarStrainId;
+        return mvarStrainIds;
     }
 }
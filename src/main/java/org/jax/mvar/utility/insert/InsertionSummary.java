@@ -0,0 +1,86 @@
+package org.jax.mvar.utility.insert;
+
+import java.util.Collection;
+
+/**
+ * Summary of the insertion of one VCF file (or of several files once merged).
+ */
+public class InsertionSummary {
+
+    private final String name;
+    private int variantsRead;
+    private int newVariants;
+    private long durationMillis;
+    private String error;
+
+    public InsertionSummary(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Merge a list of summaries into one
+     * @param name name of the merged summary
+     * @param summaries summaries to merge
+     * @return merged summary, its duration being the longest one
+     */
+    public static InsertionSummary merge(String name, Collection<InsertionSummary> summaries) {
+        InsertionSummary merged = new InsertionSummary(name);
+        int failed = 0;
+        for (InsertionSummary summary : summaries) {
+            merged.variantsRead += summary.variantsRead;
+            merged.newVariants += summary.newVariants;
+            merged.durationMillis = Math.max(merged.durationMillis, summary.durationMillis);
+            if (summary.hasFailed())
+                failed++;
+        }
+        if (failed > 0)
+            merged.error = failed + " of " + summaries.size() + " file(s) failed";
+        return merged;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getVariantsRead() {
+        return variantsRead;
+    }
+
+    public void setVariantsRead(int variantsRead) {
+        this.variantsRead = variantsRead;
+    }
+
+    public int getNewVariants() {
+        return newVariants;
+    }
+
+    public void setNewVariants(int newVariants) {
+        this.newVariants = newVariants;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public boolean hasFailed() {
+        return error != null;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + variantsRead + " variants read, " + newVariants + " new variants inserted in "
+                + (durationMillis / (60 * 1000F)) + " min" + (hasFailed() ? ", FAILED: " + error : "");
+    }
+}
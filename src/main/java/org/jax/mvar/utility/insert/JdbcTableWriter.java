@@ -0,0 +1,60 @@
+package org.jax.mvar.utility.insert;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * TableWriter using JDBC batches (PreparedStatement.addBatch/executeBatch). Used with rewriteBatchedStatements=true
+ * the driver sends multi-rows inserts.
+ */
+class JdbcTableWriter implements TableWriter {
+
+    private final Connection connection;
+    private final Map<TargetTable, PreparedStatement> statements = new EnumMap<>(TargetTable.class);
+
+    JdbcTableWriter(Connection connection) {
+        this.connection = connection;
+    }
+
+    @Override
+    public void addRow(TargetTable table, Object... values) throws SQLException {
+        PreparedStatement statement = statements.get(table);
+        if (statement == null) {
+            statement = connection.prepareStatement(table.getInsertStatement());
+            statements.put(table, statement);
+        }
+        TargetTable.Column[] columns = table.getColumns();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null)
+                statement.setNull(i + 1, columns[i].getSqlType());
+            else
+                statement.setObject(i + 1, values[i]);
+        }
+        statement.addBatch();
+    }
+
+    @Override
+    public void flush() throws SQLException {
+        for (PreparedStatement statement : statements.values()) {
+            statement.executeBatch();
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        SQLException exception = null;
+        for (PreparedStatement statement : statements.values()) {
+            try {
+                statement.close();
+            } catch (SQLException exc) {
+                exception = exc;
+            }
+        }
+        statements.clear();
+        if (exception != null)
+            throw exception;
+    }
+}
@@ -0,0 +1,140 @@
+package org.jax.mvar.utility.insert;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * TableWriter streaming the rows of each table to a TSV staging file, ingested on flush with LOAD DATA LOCAL INFILE.
+ *
+ * Requires local_infile to be enabled on the MySQL server and allowLoadLocalInfile=true in the JDBC url.
+ */
+class LoadDataTableWriter implements TableWriter {
+
+    private final Connection connection;
+    private final File stagingDir;
+    private final Map<TargetTable, File> stagingFiles = new EnumMap<>(TargetTable.class);
+    private final Map<TargetTable, Writer> writers = new EnumMap<>(TargetTable.class);
+    private final StringBuilder line = new StringBuilder();
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * @param connection jdbc connection
+     * @param stagingDir directory of the staging files, the default temporary directory if null
+     */
+    LoadDataTableWriter(Connection connection, File stagingDir) {
+        this.connection = connection;
+        this.stagingDir = stagingDir;
+    }
+
+    @Override
+    public void addRow(TargetTable table, Object... values) throws IOException {
+        Writer writer = writers.get(table);
+        if (writer == null) {
+            File file = stagingDir == null ? Files.createTempFile(table.getTableName() + "_", ".tsv").toFile()
+                    : Files.createTempFile(stagingDir.toPath(), table.getTableName() + "_", ".tsv").toFile();
+            file.deleteOnExit();
+            stagingFiles.put(table, file);
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16);
+            writers.put(table, writer);
+        }
+        line.setLength(0);
+        TargetTable.Column[] columns = table.getColumns();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0)
+                line.append('\t');
+            if (values[i] instanceof byte[] && !columns[i].isBinary())
+                throw new IllegalArgumentException("Binary value given for the " + columns[i].getName() + " column of " + table.getTableName());
+            appendValue(line, values[i]);
+        }
+        line.append('\n');
+        writer.append(line);
+    }
+
+    @Override
+    public void flush() throws IOException, SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (Map.Entry<TargetTable, Writer> entry : writers.entrySet()) {
+                TargetTable table = entry.getKey();
+                entry.getValue().close();
+                File file = stagingFiles.get(table);
+                statement.execute("LOAD DATA LOCAL INFILE '" + escapePath(file) + "' INTO TABLE " + table.getTableName()
+                        + " CHARACTER SET utf8mb4 FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' "
+                        + table.getLoadDataColumnList());
+                if (statement.getWarnings() != null)
+                    System.out.println("Warning loading " + table.getTableName() + ": " + statement.getWarnings().getMessage());
+            }
+        } finally {
+            deleteStagingFiles();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Writer writer : writers.values()) {
+            writer.close();
+        }
+        deleteStagingFiles();
+    }
+
+    private void deleteStagingFiles() {
+        for (File file : stagingFiles.values()) {
+            if (!file.delete())
+                System.out.println("Could not delete staging file " + file.getPath());
+        }
+        stagingFiles.clear();
+        writers.clear();
+    }
+
+    private static String escapePath(File file) {
+        return file.getAbsolutePath().replace("\\", "\\\\").replace("'", "\\'");
+    }
+
+    /**
+     * Append a value in the LOAD DATA default format: NULL is \N, booleans are 0/1,
+     * binary values are in hexadecimal (decoded with UNHEX, see TargetTable.getLoadDataColumnList) and
+     * backslashes, tabs and line breaks are escaped.
+     */
+    static void appendValue(StringBuilder line, Object value) {
+        if (value == null) {
+            line.append("\\N");
+        } else if (value instanceof byte[]) {
+            for (byte b : (byte[]) value) {
+                line.append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+            }
+        } else if (value instanceof Boolean) {
+            line.append((Boolean) value ? '1' : '0');
+        } else if (value instanceof Number) {
+            line.append(value);
+        } else {
+            String str = value.toString();
+            for (int i = 0; i < str.length(); i++) {
+                char c = str.charAt(i);
+                switch (c) {
+                    case '\\':
+                        line.append("\\\\");
+                        break;
+                    case '\t':
+                        line.append("\\t");
+                        break;
+                    case '\n':
+                        line.append("\\n");
+                        break;
+                    case '\r':
+                        line.append("\\r");
+                        break;
+                    case '\0':
+                        line.append("\\0");
+                        break;
+                    default:
+                        line.append(c);
+                }
+            }
+        }
+    }
+}
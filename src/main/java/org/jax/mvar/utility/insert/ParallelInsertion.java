@@ -0,0 +1,108 @@
+package org.jax.mvar.utility.insert;
+
+import org.jax.mvar.utility.Config;
+import org.jax.mvar.utility.parser.Region;
+
+import java.io.File;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Loads several VCF files (or several regions of a VCF file) concurrently, each one being inserted by its own
+ * worker with its own connection.
+ * The canonical ids are handed out by one allocator shared by all the workers. With the canonical check, the checker
+ * is shared too: the new variants of a batch are claimed until committed, so that a variant found by two workers at
+ * the same time is only inserted once.
+ */
+public class ParallelInsertion {
+
+    /**
+     * Insert a list of VCF files
+     *
+     * @param files         VCF files (vcf or gzipped)
+     * @param headerFile    header file used for all the files
+     * @param batchSize     batch size
+     * @param checkForCanon if true, a canonical check is done for each batch
+     * @param fileThreads   number of files loaded concurrently
+     * @param insertionFactory creates the (configured) insertion service of each file
+     * @return merged summary of all the files
+     * @throws Exception
+     */
+    public static InsertionSummary loadVCFs(List<File> files, File headerFile, int batchSize, boolean checkForCanon, int fileThreads,
+                                            Supplier<VariantInsertion> insertionFactory) throws Exception {
+        System.out.println("Inserting " + files.size() + " files with " + fileThreads + " concurrent file(s), " + new Date());
+        List<Function<VariantInsertion, InsertionSummary>> tasks = new ArrayList<>();
+        for (final File file : files) {
+            tasks.add(insertService -> insertService.loadVCF(file, headerFile, batchSize, checkForCanon));
+        }
+        return load("All files", tasks, fileThreads, insertionFactory);
+    }
+
+    /**
+     * Insert the regions (shards) of a bgzipped and indexed VCF file
+     *
+     * @param vcfFile       bgzipped and indexed VCF file
+     * @param headerFile    header file
+     * @param regions       regions of the file, not overlapping
+     * @param batchSize     batch size
+     * @param checkForCanon if true, a canonical check is done for each batch
+     * @param shardThreads  number of regions loaded concurrently
+     * @param insertionFactory creates the (configured) insertion service of each region
+     * @return merged summary of all the regions
+     * @throws Exception
+     */
+    public static InsertionSummary loadRegions(File vcfFile, File headerFile, List<Region> regions, int batchSize, boolean checkForCanon,
+                                               int shardThreads, Supplier<VariantInsertion> insertionFactory) throws Exception {
+        System.out.println("Inserting " + regions.size() + " regions of " + vcfFile.getName() + " with " + shardThreads + " concurrent region(s), " + new Date());
+        List<Function<VariantInsertion, InsertionSummary>> tasks = new ArrayList<>();
+        for (final Region region : regions) {
+            tasks.add(insertService -> insertService.loadVCF(vcfFile, headerFile, region, batchSize, checkForCanon));
+        }
+        return load(vcfFile.getName(), tasks, shardThreads, insertionFactory);
+    }
+
+    private static InsertionSummary load(String name, List<Function<VariantInsertion, InsertionSummary>> tasks, int threads,
+                                         Supplier<VariantInsertion> insertionFactory) throws Exception {
+        long start = System.currentTimeMillis();
+        final CanonicalIdAllocator canonIdAllocator;
+        try (Connection connection = Config.getConnection()) {
+            canonIdAllocator = CanonicalIdAllocator.fromDatabase(connection);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<InsertionSummary>> futures = new ArrayList<>();
+        try {
+            for (final Function<VariantInsertion, InsertionSummary> task : tasks) {
+                futures.add(executor.submit(() -> {
+                    VariantInsertion insertService = insertionFactory.get();
+                    insertService.setCanonIdAllocator(canonIdAllocator);
+                    return task.apply(insertService);
+                }));
+            }
+            List<InsertionSummary> summaries = new ArrayList<>();
+            for (Future<InsertionSummary> future : futures) {
+                summaries.add(future.get());
+            }
+            executor.shutdown();
+
+            InsertionSummary total = InsertionSummary.merge(name, summaries);
+            total.setDurationMillis(System.currentTimeMillis() - start);
+            System.out.println("Insertion summary, " + new Date());
+            for (InsertionSummary summary : summaries) {
+                System.out.println(summary);
+            }
+            System.out.println(total);
+            System.out.println("Canonical ids " + canonIdAllocator.getFirstId() + " to " + (canonIdAllocator.getNextId() - 1) + " were allocated.");
+            return total;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.jax.mvar.utility.insert;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Work units of a relationship insertion (consecutive id ranges of a temp table) and the record of the units
+ * already done.
+ *
+ * The finished units are appended to a progress file, one "start-end" line per unit, as soon as they are committed.
+ * When a run is restarted with the same progress file, the ids of the recorded units are skipped, whatever the
+ * unit size of the previous run. The units not recorded may still have been written in part (batches committed
+ * before an interruption, or an interruption between the last commit and the record): when the progress file
+ * existed before the run, the rows of the variants of a unit are deleted before it is processed (see
+ * VariantStrainRows.deleteRange).
+ */
+class RangeProgress {
+
+    private final File file;
+    private final boolean resumed;
+    private final List<int[]> doneUnits = new ArrayList<>();
+
+    /**
+     * @param file progress file, loaded if it exists, null to keep no record
+     * @throws IOException if the file can't be read
+     */
+    RangeProgress(File file) throws IOException {
+        this.file = file;
+        this.resumed = file != null && file.exists();
+        if (resumed) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty())
+                        continue;
+                    int idx = line.indexOf('-');
+                    if (idx == -1)
+                        throw new IOException("Invalid line in progress file " + file.getPath() + ": " + line);
+                    doneUnits.add(new int[]{Integer.parseInt(line.substring(0, idx)), Integer.parseInt(line.substring(idx + 1))});
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the progress file existed before this run, i.e. the run resumes an interrupted one
+     */
+    boolean isResumed() {
+        return resumed;
+    }
+
+    /**
+     * Split the ids of a range that are not recorded as done into work units
+     *
+     * @param start    first id
+     * @param stop     last id (included)
+     * @param unitSize maximum number of ids per unit
+     * @return the work units, as {start, stop} pairs in id order
+     */
+    synchronized List<int[]> getRemainingUnits(int start, int stop, int unitSize) {
+        List<int[]> done = new ArrayList<>(doneUnits);
+        done.sort(Comparator.comparingInt(unit -> unit[0]));
+        List<int[]> units = new ArrayList<>();
+        long next = start;
+        for (int[] unit : done) {
+            if (unit[1] < next)
+                continue;
+            if (unit[0] > stop)
+                break;
+            addUnits(units, next, Math.min((long) unit[0] - 1, stop), unitSize);
+            next = (long) unit[1] + 1;
+        }
+        addUnits(units, next, stop, unitSize);
+        return units;
+    }
+
+    private static void addUnits(List<int[]> units, long start, long stop, int unitSize) {
+        for (long unitStart = start; unitStart <= stop; unitStart += unitSize) {
+            units.add(new int[]{(int) unitStart, (int) Math.min(unitStart + unitSize - 1, stop)});
+        }
+    }
+
+    /**
+     * Record a unit as done
+     *
+     * @param unit work unit, committed
+     * @throws IOException if the progress file can't be written
+     */
+    synchronized void markDone(int[] unit) throws IOException {
+        if (file != null) {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+                writer.write(unit[0] + "-" + unit[1] + System.getProperty("line.separator"));
+            }
+        }
+        doneUnits.add(unit);
+    }
+}
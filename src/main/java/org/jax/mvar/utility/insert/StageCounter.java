@@ -0,0 +1,53 @@
+package org.jax.mvar.utility.insert;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput counter for one stage of a pipeline: number of records, number of batches
+ * and time spent working (as opposed to waiting on the other stages).
+ */
+class StageCounter {
+
+    private final String name;
+    private final int threads;
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+
+    /**
+     * @param name    stage name used for logging
+     * @param threads number of threads working on that stage
+     */
+    StageCounter(String name, int threads) {
+        this.name = name;
+        this.threads = threads;
+    }
+
+    /**
+     * Record a batch processed by the stage
+     * @param recordNumber number of records in the batch
+     * @param nanos        time spent processing the batch
+     */
+    void add(int recordNumber, long nanos) {
+        records.addAndGet(recordNumber);
+        batches.incrementAndGet();
+        busyNanos.addAndGet(nanos);
+    }
+
+    long getRecords() {
+        return records.get();
+    }
+
+    /**
+     * @param wallNanos elapsed time of the whole pipeline
+     * @return a one line summary of the stage throughput and utilization
+     */
+    String report(long wallNanos) {
+        double busySeconds = busyNanos.get() / 1e9;
+        double recordsPerSecond = busySeconds == 0 ? 0 : records.get() * threads / busySeconds;
+        long utilization = wallNanos == 0 ? 0 : Math.round(100.0 * busyNanos.get() / ((double) wallNanos * threads));
+        return String.format("%s stage (%d thread(s)): %d records in %d batches, busy %d s, %.0f records/s, %d%% utilization",
+                name, threads, records.get(), batches.get(), TimeUnit.NANOSECONDS.toSeconds(busyNanos.get()), recordsPerSecond, utilization);
+    }
+}
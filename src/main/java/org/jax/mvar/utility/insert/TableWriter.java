@@ -0,0 +1,34 @@
+package org.jax.mvar.utility.insert;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * Writer of table rows. Rows are buffered until flush is called; committing the transaction is left to the caller.
+ * Row values are given in the column order of the TargetTable and can be null, a String, a Number, a Boolean or a
+ * byte[] (binary columns only).
+ */
+interface TableWriter extends AutoCloseable {
+
+    /**
+     * Add a row to the current batch
+     * @param table  target table
+     * @param values row values, in the column order of the table
+     * @throws Exception
+     */
+    void addRow(TargetTable table, Object... values) throws Exception;
+
+    /**
+     * Send the rows of the current batch to the DB
+     * @throws Exception
+     */
+    void flush() throws Exception;
+
+    /**
+     * Release the statements or staging files of the writer
+     * @throws SQLException
+     * @throws IOException
+     */
+    @Override
+    void close() throws SQLException, IOException;
+}
@@ -0,0 +1,120 @@
+package org.jax.mvar.utility.insert;
+
+import java.sql.Types;
+
+/**
+ * Tables written by the insertion commands, with the columns (in order) of the rows given to a TableWriter and
+ * their SQL types.
+ * Tables are flushed in declaration order.
+ */
+enum TargetTable {
+
+    CANONICAL("variant_canon_identifier", c("id", Types.INTEGER), c("variant_ref_txt", Types.VARCHAR)),
+    VARIANT_TRANSCRIPT_TEMP("variant_transcript_temp", c("variant_ref_txt", Types.VARCHAR), c("transcript_ids", Types.VARCHAR),
+            c("transcript_feature_ids", Types.VARCHAR), c("id", Types.INTEGER)),
+    VARIANT("variant", c("accession", Types.VARCHAR), c("chr", Types.VARCHAR), c("position", Types.INTEGER),
+            c("alt", Types.VARCHAR), c("ref", Types.VARCHAR), c("type", Types.VARCHAR), c("functional_class_code", Types.VARCHAR),
+            c("assembly", Types.VARCHAR), c("parent_ref_ind", Types.BOOLEAN), c("variant_ref_txt", Types.VARCHAR),
+            c("variant_hgvs_notation", Types.VARCHAR), c("dna_hgvs_notation", Types.VARCHAR), c("protein_hgvs_notation", Types.VARCHAR),
+            c("impact", Types.VARCHAR), c("canon_var_identifier_id", Types.BIGINT), c("gene_id", Types.BIGINT),
+            c("protein_position", Types.VARCHAR), c("amino_acid_change", Types.VARCHAR), c("id", Types.INTEGER)),
+    GENOTYPE_TEMP("genotype_temp", c("variant_id", Types.INTEGER), c("format", Types.VARCHAR), c("genotype_data", Types.VARCHAR)),
+    VARIANT_TRANSCRIPT("variant_transcript", c("variant_transcripts_id", Types.BIGINT), c("transcript_id", Types.BIGINT),
+            c("most_pathogenic", Types.BOOLEAN)),
+    VARIANT_SOURCE("variant_source", c("variant_sources_id", Types.BIGINT), c("source_id", Types.BIGINT)),
+    VARIANT_STRAIN("variant_strain", c("variant_id", Types.INTEGER), c("strain_id", Types.INTEGER), c("genotype", Types.VARCHAR),
+            c("imputed", Types.TINYINT)),
+    VARIANT_STRAIN_PACKED("variant_strain_packed", c("variant_id", Types.INTEGER), c("imputed", Types.TINYINT),
+            c("strain_count", Types.SMALLINT), c("genotypes", Types.VARBINARY), c("other_genotypes", Types.VARCHAR),
+            c("absent_strains", Types.VARBINARY));
+
+    /**
+     * Column of a table, with the SQL type (java.sql.Types) used to bind its null values
+     */
+    static class Column {
+        private final String name;
+        private final int sqlType;
+
+        private Column(String name, int sqlType) {
+            this.name = name;
+            this.sqlType = sqlType;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        int getSqlType() {
+            return sqlType;
+        }
+
+        /**
+         * @return true for the BINARY/VARBINARY/BLOB columns, given as byte[]
+         */
+        boolean isBinary() {
+            return sqlType == Types.BINARY || sqlType == Types.VARBINARY || sqlType == Types.LONGVARBINARY || sqlType == Types.BLOB;
+        }
+    }
+
+    private static Column c(String name, int sqlType) {
+        return new Column(name, sqlType);
+    }
+
+    private final String tableName;
+    private final Column[] columns;
+
+    TargetTable(String tableName, Column... columns) {
+        this.tableName = tableName;
+        this.columns = columns;
+    }
+
+    String getTableName() {
+        return tableName;
+    }
+
+    Column[] getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return the column list as used in an INSERT statement: "(col1, col2, ...)"
+     */
+    String getColumnList() {
+        StringBuilder list = new StringBuilder("(");
+        for (int i = 0; i < columns.length; i++) {
+            list.append(i == 0 ? "" : ", ").append(columns[i].getName());
+        }
+        return list.append(")").toString();
+    }
+
+    /**
+     * @return the column list of a LOAD DATA statement: the binary columns, written in hexadecimal in the staging
+     * files, are read into variables and decoded with UNHEX: "(col1, @col2) SET col2 = UNHEX(@col2)"
+     */
+    String getLoadDataColumnList() {
+        StringBuilder list = new StringBuilder("(");
+        StringBuilder set = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            String name = columns[i].getName();
+            list.append(i == 0 ? "" : ", ");
+            if (columns[i].isBinary()) {
+                list.append('@').append(name);
+                set.append(set.length() == 0 ? " SET " : ", ").append(name).append(" = UNHEX(@").append(name).append(')');
+            } else {
+                list.append(name);
+            }
+        }
+        return list.append(")").append(set).toString();
+    }
+
+    /**
+     * @return parameterized insert statement for that table
+     */
+    String getInsertStatement() {
+        StringBuilder sql = new StringBuilder("insert into ").append(tableName).append(" ").append(getColumnList()).append(" VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        return sql.append(")").toString();
+    }
+}
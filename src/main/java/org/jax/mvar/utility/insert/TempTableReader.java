@@ -0,0 +1,81 @@
+package org.jax.mvar.utility.insert;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Reader of the rows of a temp table (genotype_temp or variant_transcript_temp) in id order, by keyset pagination:
+ * each batch is read with "id > last id read ORDER BY id LIMIT n", so that the batches are full and no row is
+ * skipped whatever the gaps in the ids. The bounds of the table are found with MIN(id)/MAX(id), from the primary
+ * key, instead of a count of the rows.
+ */
+class TempTableReader implements AutoCloseable {
+
+    /**
+     * Handles one row of a batch
+     */
+    interface RowHandler {
+        void handle(ResultSet result) throws SQLException;
+    }
+
+    private final PreparedStatement selectStmt;
+
+    /**
+     * @param connection jdbc connection
+     * @param table      temp table
+     * @param columns    columns read, after the id (column 1 of the rows given to the handler)
+     * @throws SQLException
+     */
+    TempTableReader(Connection connection, String table, String columns) throws SQLException {
+        this.selectStmt = connection.prepareStatement("SELECT id, " + columns + " FROM " + table + " WHERE id > ? AND id <= ? ORDER BY id LIMIT ?");
+    }
+
+    /**
+     * Read the next batch of rows
+     *
+     * @param afterId last id read, the batch starts after it
+     * @param stopId  last id of the range read (included)
+     * @param limit   maximum number of rows
+     * @param handler handler of each row
+     * @return id of the last row read, -1 if there is no row left in the range
+     * @throws SQLException
+     */
+    int read(int afterId, int stopId, int limit, RowHandler handler) throws SQLException {
+        selectStmt.setInt(1, afterId);
+        selectStmt.setInt(2, stopId);
+        selectStmt.setInt(3, limit);
+        int lastId = -1;
+        try (ResultSet result = selectStmt.executeQuery()) {
+            while (result.next()) {
+                lastId = result.getInt(1);
+                handler.handle(result);
+            }
+        }
+        return lastId;
+    }
+
+    /**
+     * @param connection jdbc connection
+     * @param table      temp table
+     * @return {MIN(id), MAX(id)} of the table, null if the table is empty
+     * @throws SQLException
+     */
+    static int[] getIdBounds(Connection connection, String table) throws SQLException {
+        try (PreparedStatement boundsStmt = connection.prepareStatement("SELECT MIN(id), MAX(id) FROM " + table);
+             ResultSet result = boundsStmt.executeQuery()) {
+            if (result.next()) {
+                int min = result.getInt(1);
+                if (!result.wasNull())
+                    return new int[]{min, result.getInt(2)};
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        selectStmt.close();
+    }
+}
@@ -0,0 +1,54 @@
+package org.jax.mvar.utility.insert;
+
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.jax.mvar.utility.model.Variant;
+import org.jax.mvar.utility.parser.CanonicalClaim;
+
+import java.util.List;
+
+/**
+ * A batch of variants ready to be inserted, with their functional annotations parsed.
+ */
+class VariantBatch {
+
+    private final List<Variant> variants;
+    private int firstNewId = -1;
+    private CanonicalClaim claim;
+
+    VariantBatch(int size) {
+        this.variants = new FastList<>(size);
+    }
+
+    List<Variant> getVariants() {
+        return variants;
+    }
+
+    /**
+     * @return canonical id of the first new variant of the batch, set when the batch is claimed by the canonical
+     * check (see CanonicalChecker.checkAndClaim) or else when it is written
+     */
+    int getFirstNewId() {
+        return firstNewId;
+    }
+
+    void setFirstNewId(int firstNewId) {
+        this.firstNewId = firstNewId;
+    }
+
+    /**
+     * @return claim of the batch (see CanonicalChecker.checkAndClaim), null if not checked for canonicals
+     */
+    CanonicalClaim getClaim() {
+        return claim;
+    }
+
+    void setClaim(CanonicalClaim claim) {
+        this.claim = claim;
+        if (claim != null)
+            this.firstNewId = claim.getFirstNewId();
+    }
+
+    int size() {
+        return variants.size();
+    }
+}
@@ -2,13 +2,17 @@ package org.jax.mvar.utility.insert;
 
 import org.apache.commons.lang3.time.StopWatch;
 
-import org.eclipse.collections.api.map.primitive.MutableObjectIntMap;
-import org.eclipse.collections.impl.list.mutable.FastList;
-import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
 import org.jax.mvar.utility.Config;
 import org.jax.mvar.utility.model.Variant;
+import org.jax.mvar.utility.model.VariantAnnotation;
+import org.jax.mvar.utility.parser.Annotation;
 import org.jax.mvar.utility.parser.AnnotationParser;
+import org.jax.mvar.utility.parser.CanonicalClaim;
+import org.jax.mvar.utility.parser.CanonicalChecker;
+import org.jax.mvar.utility.parser.GenotypeScanner;
 import org.jax.mvar.utility.parser.InfoParser;
+import org.jax.mvar.utility.parser.Region;
+import org.jax.mvar.utility.parser.VariantSource;
 import org.jax.mvar.utility.parser.VcfParser;
 
 import java.io.*;
@@ -22,9 +26,92 @@ public class VariantInsertion {
 
     private final static List<String> VARIANT_TYPES = Arrays.asList("SNP", "DEL", "INS");
 
-    private static int batchSize = 1000;
+    private int batchSize = 1000;
+    private int threads = 1;
+    private boolean adaptiveBatch = false;
     private static final String ASSEMBLY = "grcm38";
     private InfoParser infoParser;
+    private CanonicalIdAllocator canonIdAllocator;
+    private DictionaryCache dictionaryCache;
+    private CanonicalChecker canonicalChecker;
+    private WriterBackend writerBackend = WriterBackend.JDBC;
+    private File stagingDir;
+    private VariantStrainRows strainRows;
+    private GenotypeScanner genotypeScanner;
+
+    /**
+     * Set the number of annotation parsing threads. If more than 1, the insertion runs as a pipeline
+     * where reading, annotation parsing and DB writes overlap.
+     *
+     * @param threads number of parsing threads, 1 by default (sequential insertion)
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Set whether the batch size is adjusted at run time (see AdaptiveBatchSizer), the batch size given to loadVCF
+     * being the upper bound
+     *
+     * @param adaptiveBatch true for an adaptive batch size, false (default) for a fixed one
+     */
+    public void setAdaptiveBatch(boolean adaptiveBatch) {
+        this.adaptiveBatch = adaptiveBatch;
+    }
+
+    /**
+     * Set the backend used to write the rows
+     *
+     * @param writerBackend JDBC batches (default) or LOAD DATA LOCAL INFILE
+     * @param stagingDir    directory for the staging files of the LOAD_DATA backend, default temporary directory if null
+     */
+    public void setWriterBackend(WriterBackend writerBackend, File stagingDir) {
+        this.writerBackend = writerBackend;
+        this.stagingDir = stagingDir;
+    }
+
+    /**
+     * Set the strain rows written with each batch. If set, the variant_strain rows of the variants are written from
+     * the parsed genotypes, in the same transaction as the variants, and no genotype_temp row is written (GENO is
+     * not needed). If not set (default), the genotypes are written to genotype_temp for GENO.
+     *
+     * @param strainRows strain rows, see VariantStrainInsertion.prepareInsertStrainRows
+     */
+    public void setStrainRows(VariantStrainRows strainRows) {
+        this.strainRows = strainRows;
+        this.genotypeScanner = strainRows != null ? new GenotypeScanner() : null;
+    }
+
+    /**
+     * Set the canonical id allocator. Needs to be shared when several files are loaded concurrently.
+     * If not set, an allocator starting after the last canonical id in the DB is created for the file.
+     *
+     * @param canonIdAllocator canonical id allocator
+     */
+    public void setCanonIdAllocator(CanonicalIdAllocator canonIdAllocator) {
+        this.canonIdAllocator = canonIdAllocator;
+    }
+
+    /**
+     * Set the gene/synonym/transcript dictionary cache. Can be shared when several files are loaded concurrently.
+     * If not set, a cache loaded once for the file is created.
+     *
+     * @param dictionaryCache dictionary cache
+     */
+    public void setDictionaryCache(DictionaryCache dictionaryCache) {
+        this.dictionaryCache = dictionaryCache;
+    }
+
+    /**
+     * Set the canonical checker used when the insertion checks for existing variants. Needs to be shared when
+     * several files are loaded concurrently (the variants inserted from one file are then known to the others).
+     * If not set, a checker with one connection and no Bloom filter is opened for the file.
+     *
+     * @param canonicalChecker canonical checker
+     */
+    public void setCanonicalChecker(CanonicalChecker canonicalChecker) {
+        this.canonicalChecker = canonicalChecker;
+    }
 
     /**
      * Loads a VCF file in the database
@@ -35,21 +122,45 @@ public class VariantInsertion {
      * @param batchNumber   a batch number of 1000 is advised if enough memory (7G) is allocated to the JVM
      *                      Ultimately, the batch number depends on the File size and the JVM max and min memory
      * @param checkForCanon
+     * @return summary of the insertion
      */
-    public void loadVCF(File vcfFile, File headerFile, int batchNumber, boolean checkForCanon) {
+    public InsertionSummary loadVCF(File vcfFile, File headerFile, int batchNumber, boolean checkForCanon) {
+        return loadVCF(vcfFile, headerFile, null, batchNumber, checkForCanon);
+    }
+
+    /**
+     * Loads a region of a VCF file in the database
+     *
+     * @param vcfFile       VCF file, needs to be bgzipped and indexed if a region is given
+     * @param headerFile    header file (or the vcfFile if it has a header)
+     * @param region        region of the file to load, the whole file if null
+     * @param batchNumber   batch size
+     * @param checkForCanon
+     * @return summary of the insertion
+     */
+    public InsertionSummary loadVCF(File vcfFile, File headerFile, Region region, int batchNumber, boolean checkForCanon) {
+        InsertionSummary summary = new InsertionSummary(region == null ? vcfFile.getName() : vcfFile.getName() + " (" + region + ")");
+        long start = System.currentTimeMillis();
         batchSize = batchNumber;
         System.out.println("Parsing VCF file and inserting parsed variants into DB, " + new Date());
         System.out.println("Batch size = " + batchSize);
+        if (threads > 1)
+            System.out.println("Pipelined insertion with " + threads + " parsing threads");
         try {
             infoParser = new AnnotationParser(headerFile);
-            // parse variants into a Map
-            Map<String, Variant> variations = VcfParser.parseVcf(vcfFile, headerFile, checkForCanon);
-            // Persist data
-            persistData(variations);
+            // stream variants from the file, batch by batch
+            try (VariantSource source = VcfParser.openVcf(vcfFile, headerFile, region, threads)) {
+                // Persist data
+                summary.setNewVariants(persistData(source, checkForCanon));
+                summary.setVariantsRead(source.getCount());
+            }
         } catch (Exception e) {
             e.printStackTrace();
             System.err.println("An exception was caught: " + e.getMessage());
+            summary.setError(e.getMessage());
         }
+        summary.setDurationMillis(System.currentTimeMillis() - start);
+        return summary;
     }
 
     /**
@@ -63,20 +174,26 @@ public class VariantInsertion {
      * - external ids
      * 5. construct search doc -- TODO: possible search docs for speed querying of data in site
      *
-     * @param variations
+     * @param source        variant source, read batch by batch
+     * @param checkForCanon if true, each batch is checked for existing canonicals before insertion
+     * @return number of new variants inserted
      */
-    private void persistData(Map<String, Variant> variations) throws Exception {
-        // get Properties
-        Config config = new Config();
-
-        try (Connection connection = DriverManager.getConnection(config.getUrl(), config.getUser(), config.getPassword())) {
+    private int persistData(VariantSource source, boolean checkForCanon) throws Exception {
+        // the checker of the file, if no checker is shared
+        CanonicalChecker fileChecker = checkForCanon && canonicalChecker == null ? CanonicalChecker.open(1, false) : null;
+        try (Connection connection = Config.getConnection()) {
             final StopWatch stopWatch = new StopWatch();
             stopWatch.start();
 
             // insert variants parsed
-            int newVariantsInserted = insertVariantsBatch(connection, variations);
-            System.out.println(newVariantsInserted + " new variants inserted in " + stopWatch + ", " + new Date());
+            CanonicalChecker checker = !checkForCanon ? null : fileChecker != null ? fileChecker : canonicalChecker;
+            int newVariantsInserted = insertVariantsBatch(connection, source, checker);
+            System.out.println(newVariantsInserted + " new variants inserted from " + source.getName() + " in " + stopWatch + ", " + new Date());
             stopWatch.reset();
+            return newVariantsInserted;
+        } finally {
+            if (fileChecker != null)
+                fileChecker.close();
         }
     }
 
@@ -108,250 +225,270 @@ public class VariantInsertion {
         }
     }
 
-    private MutableObjectIntMap<?> selectAllFromColumnInList(Connection connection, String tableName, String columnName, Set<String> valueSet) throws SQLException {
-        String listOfValueAsStr = "";
-        for (String value : valueSet) {
-            listOfValueAsStr = listOfValueAsStr.equals("") ? "'" + value + "'" : listOfValueAsStr.concat(",'").concat(value).concat("'");
-        }
-        String SELECT_ALL_FROM_TABLE_IN_LIST = "SELECT ID, " + columnName + " FROM " + tableName + " WHERE " + columnName + " IN (" + listOfValueAsStr + ");";
-        Statement selectAllStmt = null;
-        ResultSet result = null;
-        MutableObjectIntMap resultMap = new ObjectIntHashMap<>();
-        try {
-            selectAllStmt = connection.createStatement();
-            result = selectAllStmt.executeQuery(SELECT_ALL_FROM_TABLE_IN_LIST);
-            while (result.next()) {
-                resultMap.put(result.getString(columnName), result.getInt("ID"));
-            }
-        } catch (SQLException exc) {
-            throw exc;
-        } finally {
-            if (result != null)
-                result.close();
-            if (selectAllStmt != null)
-                selectAllStmt.close();
-        }
-        return resultMap;
-    }
-
     /**
      * Insert Variants, variants relationship (transcripts, strain) in batch
      *
      * @param connection jdbc connection
-     * @param variations LinkedHashMap of variations
+     * @param source     variant source, only one batch of variations is held in memory at a time
+     * @param checker    if not null, each batch is checked for existing canonicals before insertion
      * @return number of new variants inserted
      */
-    private int insertVariantsBatch(Connection connection, Map<String, Variant> variations) throws Exception {
-        List<Variant> batchOfVars = new FastList<>();
-        Set<String> geneSet = new HashSet<>();
-        Set<String> transcriptSet = new HashSet<>();
-
-        List<Map<String, String>> annotationParsed;
-//        InfoParser infoParser = new AnnotationParser();
-        // Retrieve the last id of canons
-        int canonIdx, variantInsertedNumber;
-        String selectLastIdCanonical = "select id from variant_canon_identifier order by id desc limit 1 offset 0;";
-        try (PreparedStatement selectLastCanonicalIdStmt = connection.prepareStatement(selectLastIdCanonical)) {
-            ResultSet idResult = selectLastCanonicalIdStmt.executeQuery();
-            if (!idResult.next()) {
-                canonIdx = 1;
+    private int insertVariantsBatch(Connection connection, VariantSource source, CanonicalChecker checker) throws Exception {
+        if (canonIdAllocator == null)
+            canonIdAllocator = CanonicalIdAllocator.fromDatabase(connection);
+        if (dictionaryCache == null)
+            dictionaryCache = new DictionaryCache();
+        int variantInsertedNumber = 0;
+
+        // the session options are set and the insert statements prepared once for all the batches
+        try (WriterSession session = new WriterSession(connection, writerBackend, stagingDir)) {
+            AdaptiveBatchSizer sizer = adaptiveBatch ? new AdaptiveBatchSizer(batchSize) : AdaptiveBatchSizer.fixed(batchSize);
+            if (threads > 1) {
+                // reading, annotation parsing and writing run concurrently
+                VariantInsertionPipeline pipeline = new VariantInsertionPipeline(this, threads, sizer);
+                variantInsertedNumber = pipeline.run(session, source, checker);
             } else {
-                canonIdx = idResult.getInt("id") + 1;
-            }
-            variantInsertedNumber = canonIdx;
-        }
-
-        innoDBSetOptions(connection, false);
-
-        // iterate through all the variations
-        int idx = 0;
-        for (String key : variations.keySet()) {
-            Variant var = variations.get(key);
-
-            batchOfVars.add(var);
-
-            // get jannovar info
-            annotationParsed = infoParser.parse(var.getJannovarAnnotation());
-            for(Map<String, String> annotation : annotationParsed) {
-                geneSet.add(annotation.get("Gene_Name"));
-                transcriptSet.add(annotation.get("Feature_ID").split("\\.")[0]);
+                // iterate through the variations batch by batch
+                Map<String, Variant> variations;
+                while (!(variations = source.nextBatch(sizer.getBatchSize())).isEmpty()) {
+                    CanonicalClaim claim = checkBatch(checker, variations);
+                    try {
+                        VariantBatch batch = prepareBatch(variations);
+                        batch.setClaim(claim);
+                        long writeStart = System.nanoTime();
+                        variantInsertedNumber += writeBatch(session, batch, checker);
+                        sizer.update(batch.size(), System.nanoTime() - writeStart);
+                    } finally {
+                        // if the batch was not written
+                        abandonClaim(checker, claim);
+                    }
+                    System.out.println(source.getCount() + " variants read from " + source.getName() + ", " + variantInsertedNumber + " new variants inserted, " + new Date());
+                }
             }
 
-            if (idx > 1 && idx % batchSize == 0) {
-                canonIdx = batchInsertVariantsJDBC2(connection, batchOfVars, geneSet, transcriptSet, canonIdx);
-                //clear batch lists
-                batchOfVars.clear();
-                geneSet.clear();
-                transcriptSet.clear();
+            // update canonical id
+            String UPDATE_CANONICAL_ID = "update variant_canon_identifier set caid = concat(\'MCA_\', id) where caid is NULL";
+            try (PreparedStatement updateCanonicalStmt = connection.prepareStatement(UPDATE_CANONICAL_ID)) {
+                updateCanonicalStmt.execute();
+                connection.commit();
             }
-            idx++;
-        }
-
-        //last batch
-        if (batchOfVars.size() > 0) {
-            canonIdx = batchInsertVariantsJDBC2(connection, batchOfVars, geneSet, transcriptSet, canonIdx);
-            batchOfVars.clear();
-            geneSet.clear();
-            transcriptSet.clear();
-        }
-
-        // update canonical id
-        String UPDATE_CANONICAL_ID = "update variant_canon_identifier set caid = concat(\'MCA_\', id) where caid is NULL";
-        try (PreparedStatement updateCanonicalStmt = connection.prepareStatement(UPDATE_CANONICAL_ID)) {
-            updateCanonicalStmt.execute();
-            connection.commit();
         }
 
-        innoDBSetOptions(connection, true);
-
-        // calculate the number of new variants inserted
-        variantInsertedNumber = canonIdx - variantInsertedNumber;
         return variantInsertedNumber;
     }
 
     /**
-     * Insert variants, and relationships using JDBC
+     * Check a batch for existing canonicals and reserve the ids of its new variants, claimed until the batch is
+     * committed (see CanonicalChecker.checkAndClaim)
      *
-     * @param connection         jdbc connection
-     * @param batchOfVars
-     * @param geneSet
-     * @param transcriptSet
+     * @param checker    canonical checker, no check if null
+     * @param variations LinkedHashMap of variations
+     * @return claim of the batch, with the id of its first new variant, null if not checked (the ids are then
+     * reserved when written)
      */
-    private int batchInsertVariantsJDBC2(Connection connection, List<Variant> batchOfVars, Set<String> geneSet, Set<String> transcriptSet, int canonIdx) throws Exception {
-        // set autocommit on for the selects stmt
-        connection.setAutoCommit(true);
+    CanonicalClaim checkBatch(CanonicalChecker checker, Map<String, Variant> variations) throws Exception {
+        if (checker == null)
+            return null;
+        return checker.checkAndClaim(variations, canonIdAllocator::reserve);
+    }
 
-        // records of all unique gene symbols
-        MutableObjectIntMap geneSymbolRecs = selectAllFromColumnInList(connection, "gene", "symbol", geneSet);
+    /**
+     * Abandon the claim of a batch that was not written (see CanonicalChecker.abandon), nothing is done if the batch
+     * was written
+     *
+     * @param checker canonical checker, null if not checked
+     * @param claim   claim of the batch, null if not checked
+     */
+    void abandonClaim(CanonicalChecker checker, CanonicalClaim claim) {
+        if (checker != null && claim != null)
+            checker.abandon(claim);
+    }
 
-        MutableObjectIntMap geneSynonymRecs = selectAllFromColumnInList(connection, "synonym", "name", geneSet);
+    /**
+     * Write a batch prepared by prepareBatch. If the batch was checked for canonicals, it is written once the
+     * batches whose variants it reuses are committed (the variants of a failed batch being inserted by this one
+     * instead), then its claim is committed.
+     *
+     * @param session writer session of the insertion
+     * @param batch   batch of variants
+     * @param checker canonical checker, null if not checked
+     * @return number of new variants inserted
+     */
+    int writeBatch(WriterSession session, VariantBatch batch, CanonicalChecker checker) throws Exception {
+        CanonicalClaim claim = batch.getClaim();
+        if (claim == null)
+            return batchInsertVariantsJDBC2(session, batch);
+        for (Variant variant : checker.awaitClaims(claim)) {
+            // existing when the batch was prepared
+            variant.setAnnotation(parseAnnotation(variant.getJannovarAnnotation()));
+        }
+        int newVariants = batchInsertVariantsJDBC2(session, batch);
+        checker.addNew(batch.getVariants(), claim);
+        return newVariants;
+    }
 
-        MutableObjectIntMap transcriptRecs = selectAllFromColumnInList(connection, "transcript", "primary_identifier", transcriptSet);
+    /**
+     * Parse the jannovar annotations of the new variants of a batch (once, the parsed annotation is kept with
+     * the variant for the insertion).
+     * Existing variants are not inserted, so their annotations are not needed.
+     * Thread safe: can be called concurrently by the parsing workers of the pipeline.
+     *
+     * @param variations LinkedHashMap of variations
+     * @return the batch of variants to insert
+     */
+    VariantBatch prepareBatch(Map<String, Variant> variations) throws Exception {
+        VariantBatch batch = new VariantBatch(variations.size());
+        for (Variant var : variations.values()) {
+            batch.getVariants().add(var);
+            if (var.getExists())
+                continue;
 
-        // set autocommit off again
-        connection.setAutoCommit(false);
+            // get jannovar info
+            VariantAnnotation annotation = parseAnnotation(var.getJannovarAnnotation());
+            var.setAnnotation(annotation);
+        }
+        return batch;
+    }
 
-        List<Map<String, String>> annotationParsed;
-        PreparedStatement insertCanonVariants = null, insertVariants = null, insertVariantTranscriptsTemp = null, insertGenotypeTemp = null;
+    /**
+     * Parse a jannovar annotation string into the values inserted in the DB
+     *
+     * @param jannovarAnnotation ANN info entry
+     * @return parsed annotation
+     */
+    private VariantAnnotation parseAnnotation(String jannovarAnnotation) throws Exception {
+        List<Annotation> annotationParsed = infoParser.parse(jannovarAnnotation);
+        String[] geneNames = new String[annotationParsed.size()];
+        String[] transcriptIds = new String[annotationParsed.size()];
+        for (int i = 0; i < annotationParsed.size(); i++) {
+            Annotation annotation = annotationParsed.get(i);
+            geneNames[i] = annotation.get("Gene_Name");
+            // remove the transcript version
+            String featureId = annotation.get("Feature_ID");
+            int idx = featureId.indexOf('.');
+            transcriptIds[i] = idx != -1 ? featureId.substring(0, idx) : featureId;
+        }
+        return new VariantAnnotation(geneNames, transcriptIds, concatenate(annotationParsed, "Annotation"),
+                concatenate(annotationParsed, "HGVS.c"), concatenate(annotationParsed, "HGVS.p"),
+                concatenate(annotationParsed, "Annotation_Impact"));
+    }
 
-        try {
-            // directly use java PreparedStatement to get ResultSet with keys
-            insertCanonVariants = connection.prepareStatement("insert into variant_canon_identifier (variant_ref_txt) VALUES (?)", Statement.RETURN_GENERATED_KEYS);
-            insertVariants = connection.prepareStatement("insert into variant (accession, chr, position, alt, ref, type, functional_class_code, assembly, parent_ref_ind, variant_ref_txt, variant_hgvs_notation, dna_hgvs_notation, protein_hgvs_notation, impact, canon_var_identifier_id, gene_id, protein_position, amino_acid_change) VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)");
-            insertVariantTranscriptsTemp = connection.prepareStatement("insert into variant_transcript_temp (variant_ref_txt, transcript_ids, transcript_feature_ids) VALUES (?,?,?)");
-            insertGenotypeTemp = connection.prepareStatement("insert into genotype_temp (variant_id, format, genotype_data) VALUES (?,?,?)");
-
-            for (Variant variant : batchOfVars) {
-                // check if the variant exists
-                if (!variant.getExists()) {
-
-                    // insert into canonical table
-                    insertCanonVariants.setString(1, variant.getVariantRefTxt());
-                    insertCanonVariants.addBatch();
-
-                    // get jannovar info
-                    annotationParsed = infoParser.parse(variant.getJannovarAnnotation());
-                    String transcriptExistingConcatIds = "", transcriptFeatureConcatIds = "";
-                    for (Map<String, String> annotation : annotationParsed) {
-                        int idx = annotation.get("Feature_ID").indexOf('.');
-                        String transcriptId;
-                        if (idx != -1)
-                            transcriptId = annotation.get("Feature_ID").substring(0, idx);
-                        else
-                            transcriptId = annotation.get("Feature_ID");
-                        transcriptExistingConcatIds = transcriptExistingConcatIds.equals("") ? String.valueOf(transcriptRecs.get(transcriptId)) : transcriptExistingConcatIds.concat(",").concat(String.valueOf(transcriptRecs.get(transcriptId)));
-                        transcriptFeatureConcatIds = transcriptFeatureConcatIds.equals("") ? transcriptId : transcriptFeatureConcatIds.concat(",").concat(transcriptId);
-                    }
-                    // insert into temp table transcript variants
-                    insertVariantTranscriptsTemp.setString(1, variant.getVariantRefTxt());
-                    insertVariantTranscriptsTemp.setString(2, transcriptExistingConcatIds);
-                    insertVariantTranscriptsTemp.setString(3, transcriptFeatureConcatIds);
-                    insertVariantTranscriptsTemp.addBatch();
-
-                    // Do we want that? to link only the most pathogenic gene info to this variant? or do we have a one to many relationship?
-                    String geneName = annotationParsed.get(0).get("Gene_Name");
-                    long geneId = geneSymbolRecs.get(geneName);
-
-                    // we get the first gene info in the jannovar info string
-                    if (geneId == -1) {
-                        // We check in the list of synonyms to get the corresponding gene
-                        geneId = getGeneBySynonyms(connection, geneSynonymRecs, geneName);
+    /**
+     * Insert variants, and relationships using JDBC
+     *
+     * @param session            writer session of the insertion
+     * @param batch              batch of variants
+     * @return number of new variants inserted
+     */
+    int batchInsertVariantsJDBC2(WriterSession session, VariantBatch batch) throws Exception {
+        Connection connection = session.getConnection();
+        List<Variant> batchOfVars = batch.getVariants();
+        // reserve the canonical ids of the new variants of this batch
+        int newVariantNumber = 0;
+        for (Variant variant : batchOfVars) {
+            if (!variant.getExists())
+                newVariantNumber++;
+        }
+        // unless already reserved by the canonical check
+        int canonIdx = batch.getFirstNewId();
+        if (canonIdx == -1) {
+            canonIdx = canonIdAllocator.reserve(newVariantNumber);
+            batch.setFirstNewId(canonIdx);
+        }
+        // gene, synonym and transcript ids are looked up in memory
+        dictionaryCache.refreshIfNeeded(connection);
+        // the gene symbols that are not found are resolved through the synonyms at once for the whole batch
+        Set<String> geneNames = new HashSet<>();
+        for (Variant variant : batchOfVars) {
+            if (!variant.getExists())
+                geneNames.add(variant.getAnnotation().getFirstGeneName());
+        }
+        dictionaryCache.resolveSynonyms(connection, geneNames);
+
+        // the canonical id is used as the variant id and the variant_transcript_temp id (used by REL as the variant id)
+        CanonicalClaim claim = batch.getClaim();
+        for (Variant variant : batchOfVars) {
+            int variantId;
+            // check if the variant exists
+            if (!variant.getExists()) {
+                // a variant taken over from a failed batch keeps the id reserved by that batch
+                boolean adopted = claim != null && claim.isAdopted(variant);
+                int newId = adopted ? variant.getExistingId() : canonIdx;
+
+                // insert into canonical table
+                session.addRow(TargetTable.CANONICAL, newId, variant.getVariantRefTxt());
+
+                // jannovar info, parsed when the batch was prepared
+                VariantAnnotation annotation = variant.getAnnotation();
+                StringBuilder transcriptExistingConcatIds = new StringBuilder(), transcriptFeatureConcatIds = new StringBuilder();
+                for (String transcriptId : annotation.getTranscriptIds()) {
+                    if (transcriptFeatureConcatIds.length() > 0) {
+                        transcriptExistingConcatIds.append(',');
+                        transcriptFeatureConcatIds.append(',');
                     }
+                    // unknown transcripts are recorded as 0 (skipped by REL)
+                    transcriptExistingConcatIds.append(Math.max(dictionaryCache.getTranscriptId(transcriptId), 0));
+                    transcriptFeatureConcatIds.append(transcriptId);
+                }
+                // insert into temp table transcript variants
+                session.addRow(TargetTable.VARIANT_TRANSCRIPT_TEMP, variant.getVariantRefTxt(), transcriptExistingConcatIds.toString(), transcriptFeatureConcatIds.toString(), newId);
 
-                    insertVariants.setString(1, variant.getId());
-                    insertVariants.setString(2, variant.getChr());
-                    insertVariants.setInt(3, Integer.parseInt(variant.getPos()));
-                    insertVariants.setString(4, variant.getAlt());
-                    insertVariants.setString(5, variant.getRef());
-                    insertVariants.setString(6, variant.getType());
-                    String concatenations = concatenate(annotationParsed, "Annotation");
-                    if (concatenations == null)
-                        insertVariants.setNull(7, Types.VARCHAR);
-                    else
-                        insertVariants.setString(7, concatenations);
-                    insertVariants.setString(8, ASSEMBLY);
-                    insertVariants.setBoolean(9, true);
-                    // for now we put the variantRefTxt in ParentVarRef too as we are inserting variants with assembly 38 already (no liftover)
-                    insertVariants.setString(10, variant.getVariantRefTxt());
-                    insertVariants.setString(11, variant.getHgvsg());
-                    concatenations = concatenate(annotationParsed, "HGVS.c");
-                    if (concatenations == null)
-                        insertVariants.setNull(12, Types.VARCHAR);
-                    else
-                        insertVariants.setString(12, concatenations);
-                    concatenations = concatenate(annotationParsed, "HGVS.p");
-                    if (concatenations == null)
-                        insertVariants.setNull(13, Types.VARCHAR);
-                    else
-                        insertVariants.setString(13, concatenations);
-                    concatenations = concatenate(annotationParsed, "Annotation_Impact");
-                    if (concatenations == null)
-                        insertVariants.setNull(14, Types.VARCHAR);
-                    else
-                        insertVariants.setString(14, concatenations);
-                    insertVariants.setLong(15, canonIdx);
-                    if (geneId == -1)
-                        insertVariants.setNull(16, Types.BIGINT);
-                    else
-                        insertVariants.setLong(16, geneId);
-                    insertVariants.setString(17, variant.getProteinPosition());
-                    insertVariants.setString(18, variant.getAminoAcidChange());
-                    insertVariants.addBatch();
-                    // insert variant id to genotype temp with the current idx
-                    insertGenotypeTemp.setInt(1, canonIdx);
+                // Do we want that? to link only the most pathogenic gene info to this variant? or do we have a one to many relationship?
+                String geneName = annotation.getFirstGeneName();
+                long geneId = dictionaryCache.getGeneId(geneName);
 
-                    canonIdx++;
-                } else {
-                    // insert existing variant id
-                    insertGenotypeTemp.setInt(1, variant.getExistingId());
+                // we get the first gene info in the jannovar info string
+                if (geneId == -1) {
+                    // We check in the list of synonyms to get the corresponding gene
+                    geneId = dictionaryCache.getGeneIdBySynonym(geneName);
                 }
-                // insert into temp genotype table
-                insertGenotypeTemp.setString(2, variant.getFormat());
-                insertGenotypeTemp.setString(3, variant.getGenotypeData());
-                insertGenotypeTemp.addBatch();
 
+                // for now we put the variantRefTxt in ParentVarRef too as we are inserting variants with assembly 38 already (no liftover)
+                session.addRow(TargetTable.VARIANT,
+                        variant.getId(),
+                        variant.getChr(),
+                        Integer.parseInt(variant.getPos()),
+                        variant.getAlt(),
+                        variant.getRef(),
+                        variant.getType(),
+                        annotation.getAnnotation(),
+                        ASSEMBLY,
+                        true,
+                        variant.getVariantRefTxt(),
+                        variant.getHgvsg(),
+                        annotation.getHgvsC(),
+                        annotation.getHgvsP(),
+                        annotation.getAnnotationImpact(),
+                        newId,
+                        geneId == -1 ? null : geneId,
+                        variant.getProteinPosition(),
+                        variant.getAminoAcidChange(),
+                        newId);
+                // insert variant id to genotype temp with the current idx
+                variantId = newId;
+
+                if (!adopted)
+                    canonIdx++;
+            } else {
+                // insert existing variant id
+                variantId = variant.getExistingId();
+            }
+            if (strainRows != null) {
+                // variant strain relationships from the parsed genotypes, same rules as GENO
+                int sampleCount = genotypeScanner.scan(variant.getGenotypeData());
+                strainRows.add(session, variantId, genotypeScanner, sampleCount);
+            } else {
+                // insert into temp genotype table
+                session.addRow(TargetTable.GENOTYPE_TEMP, variantId, variant.getFormat(), variant.getGenotypeData());
             }
-            insertCanonVariants.executeBatch();
-            insertVariantTranscriptsTemp.executeBatch();
-            insertVariants.executeBatch();
-            insertGenotypeTemp.executeBatch();
-            connection.commit();
-            return canonIdx;
-        } finally {
-            if (insertCanonVariants != null)
-                insertCanonVariants.close();
-            if (insertVariants != null)
-                insertVariants.close();
-            if (insertVariantTranscriptsTemp != null)
-                insertVariantTranscriptsTemp.close();
-            if (insertGenotypeTemp != null)
-                insertGenotypeTemp.close();
         }
+        session.commit();
+        return newVariantNumber;
     }
 
-    private String concatenate(List<Map<String, String>> annotations, String annotationKey) {
+    private String concatenate(List<Annotation> annotations, String annotationKey) {
         String concatenationResult = "";
-        for (Map<String, String> annot : annotations) {
+        for (Annotation annot : annotations) {
             if (!concatenationResult.equals("")) {
                 concatenationResult = concatenationResult.concat(",").concat(annot.get(annotationKey));
             } else {
@@ -361,35 +498,6 @@ public class VariantInsertion {
         return concatenationResult;
     }
 
-    /**
-     * @param connection
-     * @param geneSynonymRecs
-     * @param geneName
-     * @return Returns -1 if no result was found
-     * @throws SQLException
-     */
-    private int getGeneBySynonyms(Connection connection, MutableObjectIntMap geneSynonymRecs, final String geneName) throws SQLException {
-        connection.setAutoCommit(true);
-        int synId = geneSynonymRecs.get(geneName);
-        String selectGeneBySynId = "SELECT * FROM gene_synonym WHERE synonym_id=" + synId;
-        Statement selectStmt = null;
-        ResultSet result = null;
-        try {
-            selectStmt = connection.createStatement();
-            result = selectStmt.executeQuery(selectGeneBySynId);
-            connection.setAutoCommit(false);
-            while (result.next()) return result.getInt("gene_synonyms_id");
-        } catch (SQLException exc) {
-            throw exc;
-        } finally {
-            if (result != null)
-                result.close();
-            if (selectStmt != null)
-                selectStmt.close();
-        }
-        return -1;
-    }
-
     private void saveNewTranscriptsToFile(String strainName) {
         String currentPath = (new File(".")).getAbsolutePath();
         File file = new File(currentPath + "/" + strainName + "_NewTranscripts.txt");
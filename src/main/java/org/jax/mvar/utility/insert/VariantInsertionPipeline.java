@@ -0,0 +1,168 @@
+package org.jax.mvar.utility.insert;
+
+import org.jax.mvar.utility.model.Variant;
+import org.jax.mvar.utility.parser.CanonicalChecker;
+import org.jax.mvar.utility.parser.CanonicalClaim;
+import org.jax.mvar.utility.parser.VariantSource;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Staged INSERT pipeline:
+ * 1. a reader thread pulls batches of variants from the VariantSource (and checks for canonicals if needed),
+ * 2. a pool of workers parses the functional annotations of each batch,
+ * 3. the calling thread writes the batches to the DB with JDBC, in the order they were read.
+ *
+ * The stages are connected through a bounded queue of pending batches, so the reader blocks when the
+ * writer falls behind and memory stays bounded to a few batches.
+ *
+ * With the canonical check, the reader checks a batch while the previous ones are still pending: the new variants
+ * of each batch are claimed with their ids until the batch is written (see CanonicalChecker.checkAndClaim), so that
+ * a variant found again in a later batch is taken as existing, whatever the order of the file. The claims of the
+ * batches that are not written (the pipeline stopped on an error) are abandoned when the pipeline ends.
+ */
+class VariantInsertionPipeline {
+
+    private static final Future<VariantBatch> END_OF_SOURCE = CompletableFuture.completedFuture(null);
+
+    private final VariantInsertion insertion;
+    private final int threads;
+    private final AdaptiveBatchSizer sizer;
+
+    private final StageCounter readCounter;
+    private final StageCounter parseCounter;
+    private final StageCounter writeCounter;
+
+    // claims of the batches checked and not yet written, guarded by itself
+    private final Set<CanonicalClaim> pendingClaims = new HashSet<>();
+    private boolean stopped;
+
+    /**
+     * @param insertion insertion service used to prepare and write the batches
+     * @param threads   number of annotation parsing workers
+     * @param sizer     number of variants per batch, adjusted by the writer after each batch
+     */
+    VariantInsertionPipeline(VariantInsertion insertion, int threads, AdaptiveBatchSizer sizer) {
+        this.insertion = insertion;
+        this.threads = threads;
+        this.sizer = sizer;
+        this.readCounter = new StageCounter("Read", 1);
+        this.parseCounter = new StageCounter("Parse", threads);
+        this.writeCounter = new StageCounter("Write", 1);
+    }
+
+    /**
+     * Run the pipeline until the source is exhausted.
+     *
+     * @param session       writer session used by the writer
+     * @param source        variant source
+     * @param checker       if not null, each batch is checked for existing canonicals by the reader
+     * @return number of new variants inserted
+     * @throws Exception
+     */
+    int run(WriterSession session, VariantSource source, CanonicalChecker checker) throws Exception {
+        final long start = System.nanoTime();
+        final BlockingQueue<Future<VariantBatch>> queue = new ArrayBlockingQueue<>(threads * 2);
+        ExecutorService readerExecutor = Executors.newSingleThreadExecutor();
+        ExecutorService parserExecutor = Executors.newFixedThreadPool(threads);
+        int newVariants = 0;
+        try {
+            readerExecutor.submit(() -> read(source, checker, queue, parserExecutor));
+
+            Future<VariantBatch> next;
+            while ((next = queue.take()) != END_OF_SOURCE) {
+                VariantBatch batch;
+                try {
+                    batch = next.get();
+                } catch (ExecutionException exc) {
+                    throw exc.getCause() instanceof Exception ? (Exception) exc.getCause() : exc;
+                }
+                long batchStart = System.nanoTime();
+                newVariants += insertion.writeBatch(session, batch, checker);
+                sizer.update(batch.size(), System.nanoTime() - batchStart);
+                synchronized (pendingClaims) {
+                    pendingClaims.remove(batch.getClaim());
+                }
+                writeCounter.add(batch.size(), System.nanoTime() - batchStart);
+                System.out.println(writeCounter.getRecords() + " variants written from " + source.getName() + ", "
+                        + newVariants + " new variants inserted, " + queue.size() + " batch(es) pending, " + new Date());
+            }
+        } finally {
+            readerExecutor.shutdownNow();
+            parserExecutor.shutdownNow();
+            abandonPendingClaims(checker);
+        }
+        long wallNanos = System.nanoTime() - start;
+        System.out.println(readCounter.report(wallNanos));
+        System.out.println(parseCounter.report(wallNanos));
+        System.out.println(writeCounter.report(wallNanos));
+        return newVariants;
+    }
+
+    /**
+     * Reader stage: read batches and hand them over to the parsing workers.
+     * The resulting futures are queued in reading order; the queue being bounded, this blocks
+     * when the writer is behind.
+     */
+    private Void read(VariantSource source, CanonicalChecker checker, BlockingQueue<Future<VariantBatch>> queue,
+                      ExecutorService parserExecutor) throws InterruptedException {
+        try {
+            Map<String, Variant> variations;
+            while (true) {
+                long batchStart = System.nanoTime();
+                variations = source.nextBatch(sizer.getBatchSize());
+                if (variations.isEmpty())
+                    break;
+                final CanonicalClaim claim = insertion.checkBatch(checker, variations);
+                if (claim != null) {
+                    boolean tracked;
+                    synchronized (pendingClaims) {
+                        tracked = !stopped && pendingClaims.add(claim);
+                    }
+                    if (!tracked) {
+                        // checked after the end of the pipeline
+                        insertion.abandonClaim(checker, claim);
+                        return null;
+                    }
+                }
+                readCounter.add(variations.size(), System.nanoTime() - batchStart);
+
+                final Map<String, Variant> toParse = variations;
+                queue.put(parserExecutor.submit(() -> {
+                    long parseStart = System.nanoTime();
+                    VariantBatch batch = insertion.prepareBatch(toParse);
+                    batch.setClaim(claim);
+                    parseCounter.add(batch.size(), System.nanoTime() - parseStart);
+                    return batch;
+                }));
+            }
+        } catch (InterruptedException exc) {
+            // the writer stopped the pipeline
+            throw exc;
+        } catch (Exception exc) {
+            CompletableFuture<VariantBatch> failed = new CompletableFuture<>();
+            failed.completeExceptionally(exc);
+            queue.put(failed);
+        }
+        queue.put(END_OF_SOURCE);
+        return null;
+    }
+
+    /**
+     * Abandon the claims of the batches checked by the reader and not written, once the writer stopped
+     */
+    private void abandonPendingClaims(CanonicalChecker checker) {
+        Set<CanonicalClaim> claims;
+        synchronized (pendingClaims) {
+            stopped = true;
+            claims = new HashSet<>(pendingClaims);
+            pendingClaims.clear();
+        }
+        for (CanonicalClaim claim : claims)
+            insertion.abandonClaim(checker, claim);
+    }
+}
@@ -2,19 +2,31 @@ package org.jax.mvar.utility.insert;
 
 import org.apache.commons.lang3.time.StopWatch;
 import org.jax.mvar.utility.Config;
+import org.jax.mvar.utility.parser.GenotypeScanner;
 import org.jax.mvar.utility.parser.ParserUtils;
 
 import java.io.*;
 import java.sql.*;
 import java.util.*;
 import java.util.Date;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class VariantStrainInsertion {
 
+    // number of batches per work unit
+    private static final int UNIT_BATCHES = 10;
+
     /**
-     * Insert variant/transcripts relationships given the variant_transcript_temp table
+     * Insert variant/strain relationships given the genotype_temp table
+     *
+     * The id range is split into work units of a few batches, processed by one or more workers, each worker
+     * writing with its own connection. The units done can be recorded in a progress file so that an interrupted
+     * run can be resumed.
      *
      * @param batchSize
+     * @param adaptiveBatch if true, the batch size is adjusted at run time (see AdaptiveBatchSizer), batchSize being the upper bound
      * @param startId genotype_temp id (variant id) at which to start the relationship insertion :
      *                in case a process needs to be re-run from a certain variant_id (instead of starting from the beginning all over again.
      *                By default 1.
@@ -22,71 +34,38 @@ public class VariantStrainInsertion {
      *               By default the id of the last row of the genotype_temp table (if default value is -1).
      * @param strainFilePath full path of strain file
      * @param imputed byte value where 0 = non-imputed, 1=snpgrid imputed, 2=mgi imputed
+     * @param threads number of workers (and connections) processing the work units
+     * @param progressFile file recording the work units done, the units already recorded are skipped. No record if null.
+     * @param packed if true, the genotypes of each variant are packed in one variant_strain_packed row (see PackedGenotypes)
+     *               instead of one variant_strain row per strain
      */
-    public static void insertVariantStrainRelationships(int batchSize, int startId, int stopId, String strainFilePath, byte imputed) {
+    public static void insertVariantStrainRelationships(int batchSize, boolean adaptiveBatch, int startId, int stopId, String strainFilePath, byte imputed,
+                                                        int threads, File progressFile, boolean packed) {
         System.out.println("Inserting Variant Strain relationships, " + new Date());
         final StopWatch stopWatch = new StopWatch();
         stopWatch.start();
-        // get Properties
-        Config config = new Config();
-        int numberOfRecords = 0;
-
-        try (Connection connection = DriverManager.getConnection(config.getUrl(), config.getUser(), config.getPassword())) {
-
-            Map<Integer, String> strainsMap = ParserUtils.getStrainsFromFile(connection, new File(strainFilePath));
-            // INSERT in MVAR Strain table
-            List<Map> strainMaps = InsertUtils.insertIntoMvarStrain(connection, strainsMap);
-            // INSERT imputed mvar strain relationship
-//            InsertUtils.insertMvarStrainImputed(connection, strainMaps.get(0), strainMaps.get(1), imputed);
-
-            if (stopId == -1) {
-                // count all genotypes data saved
-                PreparedStatement countStmt = null;
-                ResultSet resultCount = null;
-                try {
-                    countStmt = connection.prepareStatement("SELECT COUNT(id) from genotype_temp;");
-                    resultCount = countStmt.executeQuery();
-                    if (resultCount.next()) {
-                        numberOfRecords = resultCount.getInt(1);
-                        stopId = numberOfRecords;
-                    } else {
-                        System.out.println("error: could not get the record counts");
-                    }
-                } finally {
-                    if (resultCount != null)
-                        resultCount.close();
-                    if (countStmt != null)
-                        countStmt.close();
-                }
-            } else {
-                numberOfRecords = stopId;
+
+        try {
+            VariantStrainRows strainRows;
+            int firstId, lastId;
+            try (Connection connection = Config.getConnection()) {
+                strainRows = prepareStrainRows(connection, strainFilePath, imputed, startId, packed);
+
+                // bounds of the ids to parse, from the primary key instead of a count of the rows
+                int[] bounds = TempTableReader.getIdBounds(connection, "genotype_temp");
+                if (bounds == null)
+                    throw new Exception("The genotype_temp table is empty.");
+                firstId = Math.max(startId, bounds[0]);
+                lastId = stopId == -1 ? bounds[1] : Math.min(stopId, bounds[1]);
             }
-            System.out.println("NumberOfRows = " + (numberOfRecords - startId + 1) + " to be parsed.");
+            System.out.println("genotype_temp ids " + firstId + " to " + lastId + " to be parsed.");
             System.out.println("Batch size is " + batchSize);
-            int selectIdx = startId;
-            long start, elapsedTimeMillis;
-            Map<Integer, String[]> variantIdGenotypeMap;
-            for (int i = startId - 1; i < numberOfRecords; i++) {
-                if (i > startId && i % batchSize == 0) {
-                    start = System.currentTimeMillis();
-                    variantIdGenotypeMap = selectGenotypeFromTemp(connection, selectIdx, selectIdx + batchSize - 1);
-
-                    insertVariantStrainInBatch(connection, variantIdGenotypeMap, strainsMap, strainMaps.get(0), imputed, startId);
-                    variantIdGenotypeMap.clear();
-                    elapsedTimeMillis = System.currentTimeMillis() - start;
-                    System.out.println("Progress: " + i + " of " + numberOfRecords + ", left: " + (numberOfRecords - i) + ", duration: " + (elapsedTimeMillis / (60 * 1000F)) + " min, items inserted: " + selectIdx + " to " + (selectIdx + batchSize - 1) + ", " + new Date());
-                    selectIdx = selectIdx + batchSize;
-                }
-            }
-            // last batch
-            start = System.currentTimeMillis();
-            variantIdGenotypeMap = selectGenotypeFromTemp(connection, selectIdx, numberOfRecords);
-            if (variantIdGenotypeMap.size() > 0) {
-                insertVariantStrainInBatch(connection, variantIdGenotypeMap, strainsMap, strainMaps.get(0), imputed, startId);
-                variantIdGenotypeMap.clear();
-                elapsedTimeMillis = System.currentTimeMillis() - start;
-                System.out.println("Progress: 100%, duration: " + (elapsedTimeMillis / (60 * 1000F)) + " min, items inserted: " + selectIdx + " to " + numberOfRecords + ", " + new Date());
-            }
+
+            RangeProgress progress = new RangeProgress(progressFile);
+            List<int[]> units = progress.getRemainingUnits(firstId, lastId, batchSize * UNIT_BATCHES);
+            System.out.println(units.size() + " work unit(s) of up to " + batchSize * UNIT_BATCHES + " ids processed by " + threads + " worker(s)"
+                    + (progressFile != null ? ", progress recorded in " + progressFile.getPath() : "") + ", " + new Date());
+            new GenotypeUnitsRun(units, progress, strainRows, batchSize, adaptiveBatch).execute(threads);
 
             System.out.println("Variant/Strain relationships and genotype data inserted in " + stopWatch);
         } catch (Exception exc) {
@@ -94,82 +73,169 @@ public class VariantStrainInsertion {
         }
     }
 
-    private static Map<Integer, String[]> selectGenotypeFromTemp(Connection connection, int start, int stop) throws SQLException {
-        PreparedStatement selectStmt = null;
-        ResultSet result = null;
-        Map<Integer, String[]> variantIdGenotypeMap = new LinkedHashMap<>();
-
-        try {
-            selectStmt = connection.prepareStatement("SELECT id, variant_id, format, genotype_data FROM genotype_temp WHERE id BETWEEN ? AND ?");
-            selectStmt.setInt(1, start);
-            selectStmt.setInt(2, stop);
-            result = selectStmt.executeQuery();
-            while (result.next()) {
-                // ... get column values from this record
-                int variantId = result.getInt("variant_id");
-//                String format = result.getString("format");
-                String[] genotypes = result.getString("genotype_data").split("\t");
-//                variantIdGenotypeMap.put(variantId, new Genotype(format, genotypes));
-                variantIdGenotypeMap.put(variantId, genotypes);
-            }
-        } catch (SQLException exc) {
-            throw exc;
-        } finally {
-            if (result != null)
-                result.close();
-            if (selectStmt != null)
-                selectStmt.close();
+    /**
+     * Prepare the strain rows of an INSERT run writing the variant_strain rows directly (see
+     * VariantInsertion.setStrainRows), instead of the genotype_temp rows parsed later by GENO.
+     * The variants with an id before the first canonical id not yet allocated are the existing variants.
+     *
+     * @param strainFilePath full path of strain file
+     * @param imputed byte value where 0 = non-imputed, 1=snpgrid imputed, 2=mgi imputed
+     * @return the strain rows, shared by all the files of the run
+     * @throws Exception
+     */
+    public static VariantStrainRows prepareInsertStrainRows(String strainFilePath, byte imputed) throws Exception {
+        try (Connection connection = Config.getConnection()) {
+            int firstNewId = CanonicalIdAllocator.fromDatabase(connection).getFirstId();
+            return prepareStrainRows(connection, strainFilePath, imputed, firstNewId, false);
         }
-        return variantIdGenotypeMap;
     }
 
-    private static void insertVariantStrainInBatch(Connection connection, Map<Integer, String[]> variantIdGenotypeMap, Map<Integer, String> strainMap, Map existingStrains, byte imputed, int startId) throws Exception {
-        // insert in variant transcript relationship
-        PreparedStatement insertVariantStrain = null;
+    /**
+     * Insert the strains of the strain file and their imputed relationship if needed, and create the strain rows
+     */
+    private static VariantStrainRows prepareStrainRows(Connection connection, String strainFilePath, byte imputed, int startId, boolean packed) throws Exception {
+        Map<Integer, String> strainsMap = ParserUtils.getStrainsFromFile(connection, new File(strainFilePath));
+        // INSERT in MVAR Strain table
+        List<Map<Integer, String>> strainMaps = InsertUtils.insertIntoMvarStrain(connection, strainsMap);
+        // INSERT imputed mvar strain relationship
+        InsertUtils.insertMvarStrainImputed(connection, strainMaps.get(0), strainMaps.get(1), imputed);
+        VariantStrainRows strainRows = new VariantStrainRows(strainsMap, strainMaps.get(0), imputed, startId, packed);
+        if (packed)
+            strainRows.preparePackedTables(connection);
+        return strainRows;
+    }
+
+    /**
+     * Work units of a GENO run processed by several workers. The units are taken from a shared queue: a worker takes
+     * the next unit as soon as it is done with the previous one, so that the work is balanced between the workers.
+     * Each worker writes with its own connection and writer session.
+     */
+    private static class GenotypeUnitsRun {
+
+        private final Queue<int[]> units;
+        private final int unitCount;
+        private final long idCount;
+        private final RangeProgress progress;
+        private final VariantStrainRows strainRows;
+        private final int batchSize;
+        private final boolean adaptiveBatch;
+
+        private final long start = System.currentTimeMillis();
+        private final AtomicInteger unitsDone = new AtomicInteger();
+        private final AtomicLong idsDone = new AtomicLong();
+        private final AtomicLong rowsInserted = new AtomicLong();
+        private volatile boolean failed = false;
+
+        private GenotypeUnitsRun(List<int[]> units, RangeProgress progress, VariantStrainRows strainRows, int batchSize, boolean adaptiveBatch) {
+            this.units = new ConcurrentLinkedQueue<>(units);
+            this.unitCount = units.size();
+            long ids = 0;
+            for (int[] unit : units)
+                ids += unit[1] - unit[0] + 1;
+            this.idCount = ids;
+            this.progress = progress;
+            this.strainRows = strainRows;
+            this.batchSize = batchSize;
+            this.adaptiveBatch = adaptiveBatch;
+        }
 
-        try {
-            insertVariantStrain = connection.prepareStatement("INSERT INTO variant_strain (variant_id, strain_id, genotype, imputed) VALUES (?, ?, ?, ?)");
-            VariantInsertion.innoDBSetOptions(connection, false);
-            connection.setAutoCommit(false);
-
-            List<Integer> strainIds = new LinkedList<>();
-            strainIds.addAll(strainMap.keySet());
-            Set<Integer> existinStrainsIds = existingStrains.keySet();
-            for (Map.Entry<Integer, String[]> entry : variantIdGenotypeMap.entrySet()) {
-                int variantId = entry.getKey();
-                String[] geno = entry.getValue();
-                if (strainMap.size() != geno.length)
-                    throw new Exception("Error: the number of strains and the number columns in genotype temp table are different:" + strainMap.size() + "!=" + geno.length);
-
-                for (int i = 0; i < geno.length; i++) {
-                    // if there is a genotype data for the strain we don't add the entry if 0/0
-                    // if imputed = 1 (snpgrid) we dont save genotype for 52 sanger strains and the existing sanger variants
-                    int strainId = strainIds.get(i);
-                    if (!geno[i].startsWith("0/0") && (
-                            imputed != 1            // if not snpgrid data
-                                || (imputed == 1 && variantId >= startId)   // if snpgrid and variant id > last sanger variant (for new snpgrid variants)
-                                || (imputed == 1 && variantId < startId && !existinStrainsIds.contains(strainId)))) { // if snpgrid and variant is in sanger and not sanger strain
-                        insertVariantStrain.setInt(1, variantId);
-                        insertVariantStrain.setInt(2, strainIds.get(i));
-                        // we parse the first id (GT)
-                        int idx = geno[i].indexOf(':');
-                        String gtValue = geno[i].substring(0, idx);
-                        insertVariantStrain.setString(3, gtValue);
-                        insertVariantStrain.setByte(4, imputed); // default non imputed is 0
-                        insertVariantStrain.addBatch();
+        /**
+         * Process all the units, stopping all the workers at the first failure
+         *
+         * @param threads number of workers
+         * @throws Exception the first failure of a worker
+         */
+        void execute(int threads) throws Exception {
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+            List<Future<Void>> futures = new ArrayList<>();
+            try {
+                for (int i = 0; i < Math.max(threads, 1); i++)
+                    futures.add(executor.submit(this::work));
+                for (Future<Void> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException exc) {
+                        throw exc.getCause() instanceof Exception ? (Exception) exc.getCause() : exc;
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        private Void work() throws Exception {
+            // the session options are set and the insert statement prepared once per worker
+            try (Connection connection = Config.getConnection();
+                 TempTableReader reader = new TempTableReader(connection, "genotype_temp", "variant_id, genotype_data");
+                 WriterSession session = new WriterSession(connection, WriterBackend.JDBC, null)) {
+                AdaptiveBatchSizer sizer = adaptiveBatch ? new AdaptiveBatchSizer(batchSize) : AdaptiveBatchSizer.fixed(batchSize);
+                GenotypeScanner scanner = new GenotypeScanner();
+                Map<Integer, byte[]> variantIdGenotypeMap = new LinkedHashMap<>();
+                int[] unit;
+                while (!failed && (unit = units.poll()) != null) {
+                    long rows = 0;
+                    // a resumed unit may have been written in part by the interrupted run: the rows of its variants
+                    // are replaced, the deletion being committed with the first batch of the unit
+                    if (progress.isResumed()) {
+                        int deleted = strainRows.deleteRange(connection, unit[0], unit[1]);
+                        if (deleted > 0)
+                            System.out.println(deleted + " rows of the variants of genotype_temp ids " + unit[0] + " to " + unit[1] + " written by a previous run were deleted.");
+                    }
+                    int lastIdRead = unit[0] - 1;
+                    // the batches of the unit are read after the last id read, until no row is left in the unit
+                    while ((lastIdRead = selectGenotypeFromTemp(reader, lastIdRead, unit[1], sizer.getBatchSize(), variantIdGenotypeMap)) != -1) {
+                        long writeStart = System.nanoTime();
+                        rows += insertVariantStrainInBatch(session, variantIdGenotypeMap, strainRows, scanner);
+                        sizer.update(variantIdGenotypeMap.size(), System.nanoTime() - writeStart);
+                        variantIdGenotypeMap.clear();
                     }
+                    progress.markDone(unit);
+                    report(unit, rows);
                 }
+            } catch (Exception exc) {
+                failed = true;
+                throw exc;
             }
-            insertVariantStrain.executeBatch();
-            connection.commit();
-        } catch (SQLException exc) {
-            throw exc;
-        } finally {
-            if (insertVariantStrain != null)
-                insertVariantStrain.close();
-            VariantInsertion.innoDBSetOptions(connection, true);
-            connection.setAutoCommit(true);
+            return null;
+        }
+
+        private void report(int[] unit, long rows) {
+            int done = unitsDone.incrementAndGet();
+            long ids = idsDone.addAndGet(unit[1] - unit[0] + 1);
+            long inserted = rowsInserted.addAndGet(rows);
+            System.out.println("Progress: " + done + " of " + unitCount + " units, " + ids + " of " + idCount + " ids ("
+                    + (100 * ids / Math.max(idCount, 1)) + "%), duration: " + ((System.currentTimeMillis() - start) / (60 * 1000F))
+                    + " min, items inserted: " + unit[0] + " to " + unit[1] + ", " + inserted + " variant/strain rows, " + new Date());
+        }
+    }
+
+    /**
+     * Read the next batch of genotype_temp rows
+     *
+     * @param reader               genotype_temp reader
+     * @param afterId              last id read
+     * @param stopId               last id of the range read
+     * @param limit                maximum number of rows
+     * @param variantIdGenotypeMap genotype blocks by variant id, filled with the rows read
+     * @return id of the last row read, -1 if there is no row left in the range
+     * @throws SQLException
+     */
+    private static int selectGenotypeFromTemp(TempTableReader reader, int afterId, int stopId, int limit, Map<Integer, byte[]> variantIdGenotypeMap) throws SQLException {
+        // the genotypes are kept as raw bytes, scanned once when inserted
+        return reader.read(afterId, stopId, limit, result ->
+                variantIdGenotypeMap.put(result.getInt("variant_id"), result.getBytes("genotype_data")));
+    }
+
+    private static int insertVariantStrainInBatch(WriterSession session, Map<Integer, byte[]> variantIdGenotypeMap, VariantStrainRows strainRows, GenotypeScanner scanner) throws Exception {
+        // insert in variant strain relationship
+        int rows = 0;
+        for (Map.Entry<Integer, byte[]> entry : variantIdGenotypeMap.entrySet()) {
+            // GT of each sample, in one pass over the genotype block
+            int sampleCount = scanner.scan(entry.getValue());
+            rows += strainRows.add(session, entry.getKey(), scanner, sampleCount);
         }
+        strainRows.commit(session);
+        return rows;
     }
 
 }
@@ -0,0 +1,231 @@
+package org.jax.mvar.utility.insert;
+
+import org.jax.mvar.utility.model.PackedGenotypes;
+import org.jax.mvar.utility.parser.GenotypeScanner;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns the GT codes of the samples of a variant (see GenotypeScanner) into variant_strain rows.
+ *
+ * There is no row for the 0/0 genotypes. For snpgrid data (imputed = 1), the variants before startId (the existing
+ * sanger variants) have no row for the strains already linked to the imputed data (the sanger strains).
+ * The strain ids are held in the column order of the samples. The rows are added by GENO from genotype_temp, or by
+ * INSERT from the parsed variants (see VariantInsertion.setStrainRows).
+ *
+ * In packed mode, each variant gets one variant_strain_packed row holding the genotypes of all the strains
+ * (see PackedGenotypes) instead of one variant_strain row per strain. The strains skipped by the rules above are
+ * flagged as absent from the row. The strain of each position is recorded once per imputed value in
+ * variant_strain_packed_strain. Both tables are created with schema/variant_strain_packed.sql. A variant can only
+ * have one packed row per imputed value: a variant found again in another genotype_temp row fails the run.
+ */
+public class VariantStrainRows {
+
+    // maximum number of variant ids per delete query
+    private static final int DELETE_CHUNK_SIZE = 1000;
+    // ER_DUP_ENTRY
+    private static final int MYSQL_DUPLICATE_KEY = 1062;
+
+    private final int[] strainIds;
+    private final boolean[] existingStrains;
+    private final byte imputed;
+    private final int startId;
+    private final boolean packed;
+
+    /**
+     * @param strainMap       strain names by strain id, in the column order of the samples
+     * @param existingStrains strains already linked to the imputed data, by strain id
+     * @param imputed         0 = non-imputed, 1=snpgrid imputed, 2=mgi imputed
+     * @param startId         first variant id of the run (for snpgrid data, the variants before it are existing sanger variants)
+     * @param packed          if true, one variant_strain_packed row is written per variant
+     */
+    VariantStrainRows(Map<Integer, String> strainMap, Map<Integer, ?> existingStrains, byte imputed, int startId, boolean packed) {
+        this.strainIds = new int[strainMap.size()];
+        this.existingStrains = new boolean[strainMap.size()];
+        int i = 0;
+        for (Integer strainId : strainMap.keySet()) {
+            strainIds[i] = strainId;
+            this.existingStrains[i] = existingStrains.containsKey(strainId);
+            i++;
+        }
+        this.imputed = imputed;
+        this.startId = startId;
+        this.packed = packed;
+    }
+
+    /**
+     * Check that the packed tables exist and record the strain of each position, checking that the strains are the
+     * ones of the rows already packed for the imputed value
+     *
+     * @param connection jdbc connection
+     * @throws SQLException if the tables don't exist, if there are too many strains or if the strains differ from
+     *                      the recorded ones
+     */
+    void preparePackedTables(Connection connection) throws SQLException {
+        for (String table : new String[]{"variant_strain_packed", "variant_strain_packed_strain"}) {
+            try (ResultSet result = connection.getMetaData().getTables(connection.getCatalog(), null, table, new String[]{"TABLE"})) {
+                if (!result.next())
+                    throw new SQLException("The " + table + " table does not exist, the packed tables need to be created with schema/variant_strain_packed.sql.");
+            }
+        }
+        if (strainIds.length > PackedGenotypes.MAX_SIZE)
+            throw new SQLException("At most " + PackedGenotypes.MAX_SIZE + " strains can be packed, the strain file has " + strainIds.length + " strains.");
+        List<Integer> recorded = new ArrayList<>();
+        try (PreparedStatement selectStmt = connection.prepareStatement("SELECT strain_id FROM variant_strain_packed_strain WHERE imputed = ? ORDER BY position")) {
+            selectStmt.setByte(1, imputed);
+            try (ResultSet result = selectStmt.executeQuery()) {
+                while (result.next())
+                    recorded.add(result.getInt(1));
+            }
+        }
+        if (!recorded.isEmpty()) {
+            boolean same = recorded.size() == strainIds.length;
+            for (int i = 0; same && i < strainIds.length; i++)
+                same = recorded.get(i) == strainIds[i];
+            if (!same)
+                throw new SQLException("The strains of the strain file are not the strains already packed for imputed=" + imputed
+                        + " (" + recorded.size() + " strains in variant_strain_packed_strain).");
+            return;
+        }
+        try (PreparedStatement insertStmt = connection.prepareStatement("INSERT INTO variant_strain_packed_strain (imputed, position, strain_id) VALUES (?, ?, ?)")) {
+            for (int i = 0; i < strainIds.length; i++) {
+                insertStmt.setByte(1, imputed);
+                insertStmt.setInt(2, i);
+                insertStmt.setInt(3, strainIds[i]);
+                insertStmt.addBatch();
+            }
+            insertStmt.executeBatch();
+        }
+    }
+
+    /**
+     * Delete the rows written by a previous run of the same strains and imputed value for the variants of a range of
+     * genotype_temp rows, so that the range can be processed again without duplicates. Left uncommitted: the
+     * deletion is part of the transaction of the first batch of the range.
+     *
+     * @param connection jdbc connection, with autocommit off
+     * @param firstId    first genotype_temp id of the range
+     * @param lastId     last genotype_temp id of the range (included)
+     * @return number of rows deleted
+     * @throws SQLException
+     */
+    int deleteRange(Connection connection, int firstId, int lastId) throws SQLException {
+        // the genotype_temp ids are not the variant ids
+        List<Integer> variantIds = new ArrayList<>();
+        try (PreparedStatement selectStmt = connection.prepareStatement("SELECT DISTINCT variant_id FROM genotype_temp WHERE id BETWEEN ? AND ?")) {
+            selectStmt.setInt(1, firstId);
+            selectStmt.setInt(2, lastId);
+            try (ResultSet result = selectStmt.executeQuery()) {
+                while (result.next())
+                    variantIds.add(result.getInt(1));
+            }
+        }
+        int deleted = 0;
+        for (int from = 0; from < variantIds.size(); from += DELETE_CHUNK_SIZE) {
+            List<Integer> chunk = variantIds.subList(from, Math.min(from + DELETE_CHUNK_SIZE, variantIds.size()));
+            StringBuilder sql = new StringBuilder(packed ? "DELETE FROM variant_strain_packed" : "DELETE FROM variant_strain")
+                    .append(" WHERE imputed = ? AND variant_id IN (");
+            for (int i = 0; i < chunk.size(); i++)
+                sql.append(i == 0 ? "?" : ",?");
+            sql.append(")");
+            if (!packed) {
+                sql.append(" AND strain_id IN (");
+                for (int i = 0; i < strainIds.length; i++)
+                    sql.append(i == 0 ? "?" : ",?");
+                sql.append(")");
+            }
+            try (PreparedStatement deleteStmt = connection.prepareStatement(sql.toString())) {
+                int idx = 1;
+                deleteStmt.setByte(idx++, imputed);
+                for (int variantId : chunk)
+                    deleteStmt.setInt(idx++, variantId);
+                if (!packed) {
+                    for (int strainId : strainIds)
+                        deleteStmt.setInt(idx++, strainId);
+                }
+                deleted += deleteStmt.executeUpdate();
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Commit the rows of a batch. In packed mode, a variant can only have one row per imputed value: a variant found
+     * in several genotype_temp rows fails the run with an explicit message (the batch is rolled back).
+     *
+     * @param session writer session
+     * @throws Exception
+     */
+    void commit(WriterSession session) throws Exception {
+        try {
+            session.commit();
+        } catch (SQLException exc) {
+            if (packed && isDuplicateKey(exc))
+                throw new Exception("A variant already has a packed row for imputed=" + imputed + ": each variant can only appear "
+                        + "in one genotype_temp row in packed mode (rows of a previous run, or the same variant loaded twice). "
+                        + "The duplicated genotype_temp rows need to be removed, or GENO run without -packed. " + exc.getMessage(), exc);
+            throw exc;
+        }
+    }
+
+    /**
+     * @return true if the exception (or one of its causes or next exceptions) is a duplicate key error
+     */
+    static boolean isDuplicateKey(SQLException exc) {
+        for (Throwable cause = exc; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException) {
+                SQLException sqlExc = (SQLException) cause;
+                if (sqlExc instanceof SQLIntegrityConstraintViolationException || sqlExc.getErrorCode() == MYSQL_DUPLICATE_KEY)
+                    return true;
+                if (sqlExc.getNextException() != null && isDuplicateKey(sqlExc.getNextException()))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add the variant_strain rows (or the variant_strain_packed row) of a variant
+     *
+     * @param session     writer session
+     * @param variantId   variant id
+     * @param scanner     scanner of the genotypes of the variant
+     * @param sampleCount number of samples scanned
+     * @return number of rows added
+     * @throws Exception if the number of samples is not the number of strains
+     */
+    int add(WriterSession session, int variantId, GenotypeScanner scanner, int sampleCount) throws Exception {
+        if (sampleCount != strainIds.length)
+            throw new Exception("Error: the number of strains and the number columns in genotype temp table are different:" + strainIds.length + "!=" + sampleCount);
+        int[] codes = scanner.getCodes();
+        // if snpgrid and variant is in sanger, we dont save genotype for the sanger strains
+        boolean skipExistingStrains = imputed == 1 && variantId < startId;
+        if (packed) {
+            PackedGenotypes genotypes = new PackedGenotypes(sampleCount);
+            for (int i = 0; i < sampleCount; i++) {
+                if (skipExistingStrains && existingStrains[i])
+                    genotypes.setAbsent(i);
+                else
+                    genotypes.set(i, scanner.getGenotype(codes[i]));
+            }
+            session.addRow(TargetTable.VARIANT_STRAIN_PACKED, variantId, imputed, sampleCount, genotypes.toBytes(),
+                    genotypes.getOtherGenotypes(), genotypes.getAbsentMask());
+            return 1;
+        }
+        int rows = 0;
+        for (int i = 0; i < sampleCount; i++) {
+            if (codes[i] != GenotypeScanner.HOM_REF && !(skipExistingStrains && existingStrains[i])) {
+                session.addRow(TargetTable.VARIANT_STRAIN, variantId, strainIds[i], scanner.getGenotype(codes[i]), imputed);
+                rows++;
+            }
+        }
+        return rows;
+    }
+}
@@ -14,46 +14,50 @@ public class VariantTranscriptInsertion {
      * Insert variant/transcripts and variant/source relationships given the variant_transcript_temp table and the source Name
      *
      * @param batchSize
+     * @param adaptiveBatch if true, the batch size is adjusted at run time (see AdaptiveBatchSizer), batchSize being the upper bound
      * @param startId in case a process needs to be re-run from a certain variant_id (instead of starting from the beginning all over again
      * @param sourceName
      * @throws Exception
      */
-    public static void insertVariantTranscriptSourceRel(int batchSize, int startId, String sourceName) throws Exception {
+    public static void insertVariantTranscriptSourceRel(int batchSize, boolean adaptiveBatch, int startId, String sourceName) throws Exception {
         System.out.println("Inserting Variant Transcript relationships, " + new Date());
         final StopWatch stopWatch = new StopWatch();
         stopWatch.start();
-        // get Properties
-        Config config = new Config();
 
-        try (Connection connection = DriverManager.getConnection(config.getUrl(), config.getUser(), config.getPassword())) {
-            int numberOfRecords = getCount(connection);
+        try (Connection connection = Config.getConnection()) {
+            // bounds of the ids to parse, from the primary key instead of a count of the rows
+            int[] bounds = TempTableReader.getIdBounds(connection, "variant_transcript_temp");
+            if (bounds == null) {
+                System.out.println("The variant_transcript_temp table is empty.");
+                return;
+            }
+            int lastId = bounds[1];
+            System.out.println("variant_transcript_temp ids " + Math.max(startId, bounds[0]) + " to " + lastId + " to be parsed.");
             int sourceId = getSourceId(connection, sourceName);
             System.out.println("Batch size is " + batchSize);
-            connection.setAutoCommit(false);
-            int selectIdx = startId;
-            long start, elapsedTimeMillis;
-            Map<Long, Set<Long>> variantIdTranscriptIdsMap;
-            for (int i = startId - 1; i < numberOfRecords; i++) {
-                if (i > startId && i % batchSize == 0) {
+            // autocommit is turned off and the statements prepared once for all the batches, the foreign key and
+            // unique checks are kept on
+            try (TempTableReader reader = new TempTableReader(connection, "variant_transcript_temp", "transcript_ids");
+                 WriterSession session = new WriterSession(connection, WriterBackend.JDBC, null, false)) {
+                AdaptiveBatchSizer sizer = adaptiveBatch ? new AdaptiveBatchSizer(batchSize) : AdaptiveBatchSizer.fixed(batchSize);
+                int lastIdRead = startId - 1;
+                long start, elapsedTimeMillis;
+                Map<Long, Set<Long>> variantIdTranscriptIdsMap = new LinkedHashMap<>();
+                while (true) {
                     start = System.currentTimeMillis();
-                    variantIdTranscriptIdsMap = selectVariantTranscriptsFromTemp(connection, selectIdx, selectIdx + batchSize - 1);
+                    int firstIdRead = lastIdRead + 1;
+                    lastIdRead = selectVariantTranscriptsFromTemp(reader, lastIdRead, lastId, sizer.getBatchSize(), variantIdTranscriptIdsMap);
+                    if (lastIdRead == -1)
+                        break;
 
-                    insertVariantTranscriptSourceInBatch(connection, variantIdTranscriptIdsMap, sourceId);
+                    long writeStart = System.nanoTime();
+                    insertVariantTranscriptSourceInBatch(session, variantIdTranscriptIdsMap, sourceId);
+                    sizer.update(variantIdTranscriptIdsMap.size(), System.nanoTime() - writeStart);
                     variantIdTranscriptIdsMap.clear();
                     elapsedTimeMillis = System.currentTimeMillis() - start;
-                    System.out.println("Progress: " + i + " of " + numberOfRecords + ", duration: " + (elapsedTimeMillis / (60 * 1000F)) + " min, items inserted: " + selectIdx + " to " + (selectIdx + batchSize - 1) + ". " + new Date());
-                    selectIdx = selectIdx + batchSize;
+                    System.out.println("Progress: " + lastIdRead + " of " + lastId + ", duration: " + (elapsedTimeMillis / (60 * 1000F)) + " min, items inserted: " + firstIdRead + " to " + lastIdRead + ". " + new Date());
                 }
             }
-            // last batch
-            start = System.currentTimeMillis();
-            variantIdTranscriptIdsMap = selectVariantTranscriptsFromTemp(connection, selectIdx, numberOfRecords);
-            if (variantIdTranscriptIdsMap.size() > 0) {
-                insertVariantTranscriptSourceInBatch(connection, variantIdTranscriptIdsMap, sourceId);
-                variantIdTranscriptIdsMap.clear();
-                elapsedTimeMillis = System.currentTimeMillis() - start;
-                System.out.println("Progress: 100%, duration: " + (elapsedTimeMillis / (60 * 1000F)) + " min, items inserted: " + selectIdx + " to " + numberOfRecords + ". " + new Date());
-            }
             // time
             System.out.println("Variant/Transcripts relationships inserted in " + stopWatch);
         } catch (SQLException exc) {
@@ -88,97 +92,45 @@ public class VariantTranscriptInsertion {
         return sourceId;
     }
 
-    private static int getCount(Connection connection) throws SQLException {
-        PreparedStatement countStmt = null;
-        ResultSet resultCount = null;
-        int numberOfRecords = 0;
-        try {
-            countStmt = connection.prepareStatement("SELECT COUNT(*) from variant_transcript_temp");
-            resultCount = countStmt.executeQuery();
-            if (resultCount.next()) {
-                numberOfRecords = resultCount.getInt(1);
-                System.out.println("NumberOfRows = " + numberOfRecords);
-            } else {
-                System.out.println("error: could not get the record counts");
-            }
-        } finally {
-            if (resultCount != null)
-                resultCount.close();
-            if (countStmt != null)
-                countStmt.close();
-        }
-        return numberOfRecords;
-    }
-
-    private static Map<Long, Set<Long>> selectVariantTranscriptsFromTemp(Connection connection, int start, int stop) throws SQLException {
-        PreparedStatement selectStmt = null;
-        ResultSet result = null;
-        Map<Long, Set<Long>> variantIdTranscriptIdsMap = new LinkedHashMap<>();
-
-        try {
-            selectStmt = connection.prepareStatement("SELECT id, transcript_ids FROM variant_transcript_temp WHERE id BETWEEN ? AND ?");
-            selectStmt.setInt(1, start);
-            selectStmt.setInt(2, stop);
-            result = selectStmt.executeQuery();
-            while (result.next()) {
-                // ... get column values from this record
-                long variantId = result.getLong("id");
-                String[] transcripts = result.getString("transcript_ids").split(",");
-                Set<Long> transcriptIdsSet = new LinkedHashSet<>();
-                for (String transcriptId : transcripts) {
-                    if (!transcriptId.equals("null") && !transcriptId.equals("0"))
-                        transcriptIdsSet.add(Long.valueOf(transcriptId));
-                }
-                variantIdTranscriptIdsMap.put(variantId, transcriptIdsSet);
+    /**
+     * Read the next batch of variant_transcript_temp rows
+     *
+     * @param reader                    variant_transcript_temp reader
+     * @param afterId                   last id read
+     * @param stopId                    last id of the range read
+     * @param limit                     maximum number of rows
+     * @param variantIdTranscriptIdsMap transcript ids by variant id, filled with the rows read
+     * @return id of the last row read, -1 if there is no row left in the range
+     * @throws SQLException
+     */
+    private static int selectVariantTranscriptsFromTemp(TempTableReader reader, int afterId, int stopId, int limit, Map<Long, Set<Long>> variantIdTranscriptIdsMap) throws SQLException {
+        return reader.read(afterId, stopId, limit, result -> {
+            long variantId = result.getLong("id");
+            String[] transcripts = result.getString("transcript_ids").split(",");
+            Set<Long> transcriptIdsSet = new LinkedHashSet<>();
+            for (String transcriptId : transcripts) {
+                if (!transcriptId.equals("null") && !transcriptId.equals("0"))
+                    transcriptIdsSet.add(Long.valueOf(transcriptId));
             }
-        } catch (SQLException exc) {
-            throw exc;
-        } finally {
-            if (result != null)
-                result.close();
-            if (selectStmt != null)
-                selectStmt.close();
-        }
-        return variantIdTranscriptIdsMap;
+            variantIdTranscriptIdsMap.put(variantId, transcriptIdsSet);
+        });
     }
 
-    private static void insertVariantTranscriptSourceInBatch(Connection connection, Map<Long, Set<Long>> variantIdTranscriptIdsMap, int sourceId) throws SQLException {
+    private static void insertVariantTranscriptSourceInBatch(WriterSession session, Map<Long, Set<Long>> variantIdTranscriptIdsMap, int sourceId) throws Exception {
         // insert in variant transcript relationship
-        PreparedStatement insertVariantTranscripts = null, insertVariantSources = null;
-
-        try {
-            insertVariantTranscripts = connection.prepareStatement("INSERT INTO variant_transcript (variant_transcripts_id, transcript_id, most_pathogenic) VALUES (?,?,?)");
-            insertVariantSources = connection.prepareStatement("INSERT INTO variant_source (variant_sources_id, source_id) VALUES (?,?)");
-
-            connection.setAutoCommit(false);
-            for (Map.Entry<Long, Set<Long>> entry : variantIdTranscriptIdsMap.entrySet()) {
-                long variantId = entry.getKey();
-                // insert variant transcript relationship
-                Set<Long> transcriptIds = entry.getValue();
-                Iterator<Long> itr = transcriptIds.iterator();
-                int idx = 0;
-                while (itr.hasNext()) {
-                    insertVariantTranscripts.setLong(1, variantId);
-                    insertVariantTranscripts.setLong(2, itr.next());
-                    insertVariantTranscripts.setBoolean(3, idx == 0);
-                    insertVariantTranscripts.addBatch();
-                    idx++;
-                }
-                // insert variant source relationship
-                insertVariantSources.setLong(1, variantId);
-                insertVariantSources.setLong(2, sourceId);
-                insertVariantSources.addBatch();
+        for (Map.Entry<Long, Set<Long>> entry : variantIdTranscriptIdsMap.entrySet()) {
+            long variantId = entry.getKey();
+            // insert variant transcript relationship
+            Set<Long> transcriptIds = entry.getValue();
+            Iterator<Long> itr = transcriptIds.iterator();
+            int idx = 0;
+            while (itr.hasNext()) {
+                session.addRow(TargetTable.VARIANT_TRANSCRIPT, variantId, itr.next(), idx == 0);
+                idx++;
             }
-            insertVariantTranscripts.executeBatch();
-            insertVariantSources.executeBatch();
-            connection.commit();
-        } catch (SQLException exc) {
-            throw exc;
-        } finally {
-            if (insertVariantTranscripts != null)
-                insertVariantTranscripts.close();
-            if (insertVariantSources != null)
-                insertVariantSources.close();
+            // insert variant source relationship
+            session.addRow(TargetTable.VARIANT_SOURCE, variantId, sourceId);
         }
+        session.commit();
     }
 }
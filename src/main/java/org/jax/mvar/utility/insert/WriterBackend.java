@@ -0,0 +1,46 @@
+package org.jax.mvar.utility.insert;
+
+import java.io.File;
+import java.sql.Connection;
+
+/**
+ * Available backends to write rows to the DB
+ */
+public enum WriterBackend {
+
+    /**
+     * JDBC batch inserts
+     */
+    JDBC,
+    /**
+     * TSV staging files ingested with LOAD DATA LOCAL INFILE
+     */
+    LOAD_DATA;
+
+    /**
+     * @param name backend name as given on the command line ("jdbc" or "load_data")
+     * @return the corresponding backend
+     */
+    public static WriterBackend fromName(String name) {
+        switch (name.toLowerCase()) {
+            case "jdbc":
+                return JDBC;
+            case "load_data":
+                return LOAD_DATA;
+            default:
+                throw new IllegalArgumentException("Unexpected writer: " + name + ". Please use jdbc or load_data.");
+        }
+    }
+
+    /**
+     * Create a table writer for this backend
+     * @param connection jdbc connection
+     * @param stagingDir staging directory for the LOAD_DATA backend (default temporary directory if null)
+     * @return the table writer
+     */
+    TableWriter createWriter(Connection connection, File stagingDir) {
+        if (this == LOAD_DATA)
+            return new LoadDataTableWriter(connection, stagingDir);
+        return new JdbcTableWriter(connection);
+    }
+}
@@ -0,0 +1,110 @@
+package org.jax.mvar.utility.insert;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Long-lived writing session on one connection, kept open for a whole run (INSERT, REL or GENO).
+ *
+ * The InnoDB session options (autocommit, foreign key and unique checks, see VariantInsertion.innoDBSetOptions)
+ * are turned off once when the session is opened and restored once when it is closed; a session that keeps the
+ * checks on (REL) only turns autocommit off. The rows are written through
+ * one TableWriter reused by all the batches, so its insert statements are only prepared once. Each batch ends with
+ * commit; rows added but not committed when the session is closed are rolled back.
+ */
+class WriterSession implements AutoCloseable {
+
+    private final Connection connection;
+    private final TableWriter writer;
+    private final boolean disableChecks;
+    private boolean pending = false;
+    private int batchCount = 0;
+
+    /**
+     * @param connection jdbc connection, used by this session until it is closed
+     * @param backend    backend used to write the rows
+     * @param stagingDir staging directory of the LOAD_DATA backend (default temporary directory if null)
+     * @throws SQLException if the session options can't be set
+     */
+    WriterSession(Connection connection, WriterBackend backend, File stagingDir) throws SQLException {
+        this(connection, backend, stagingDir, true);
+    }
+
+    /**
+     * @param connection    jdbc connection, used by this session until it is closed
+     * @param backend       backend used to write the rows
+     * @param stagingDir    staging directory of the LOAD_DATA backend (default temporary directory if null)
+     * @param disableChecks true to turn the foreign key and unique checks off for the session, false to only turn
+     *                      autocommit off
+     * @throws SQLException if the session options can't be set
+     */
+    WriterSession(Connection connection, WriterBackend backend, File stagingDir, boolean disableChecks) throws SQLException {
+        this.connection = connection;
+        this.disableChecks = disableChecks;
+        if (disableChecks)
+            VariantInsertion.innoDBSetOptions(connection, false);
+        else
+            connection.setAutoCommit(false);
+        this.writer = backend.createWriter(connection, stagingDir);
+    }
+
+    /**
+     * @return the connection of the session, for the queries made between the batches
+     */
+    Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Add a row to the current batch
+     *
+     * @param table  target table
+     * @param values row values, in the column order of the table
+     * @throws Exception
+     */
+    void addRow(TargetTable table, Object... values) throws Exception {
+        pending = true;
+        writer.addRow(table, values);
+    }
+
+    /**
+     * Send the rows of the current batch to the DB and commit them
+     *
+     * @throws Exception
+     */
+    void commit() throws Exception {
+        writer.flush();
+        connection.commit();
+        pending = false;
+        batchCount++;
+    }
+
+    /**
+     * @return number of batches committed
+     */
+    int getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * Roll back the rows not committed, close the writer and restore the session options
+     *
+     * @throws SQLException
+     * @throws IOException if the staging files of the LOAD_DATA backend can't be closed
+     */
+    @Override
+    public void close() throws SQLException, IOException {
+        try {
+            if (pending)
+                connection.rollback();
+            writer.close();
+        } finally {
+            if (disableChecks)
+                VariantInsertion.innoDBSetOptions(connection, true);
+            else
+                connection.setAutoCommit(true);
+        }
+    }
+}
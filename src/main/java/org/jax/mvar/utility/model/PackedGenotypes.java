@@ -0,0 +1,203 @@
+package org.jax.mvar.utility.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Genotypes of all the strains of a variant packed in 2 bits per strain (variant_strain_packed table):
+ * 0 = reference (0/0), 1 = heterozygous (0/1), 2 = homozygous alternate (1/1) and 3 = missing (./.).
+ *
+ * The strains are packed 4 per byte, the first strain in the lowest bits of the first byte. The GTs that are not
+ * one of the 4 GTs above ("1/2", "0|1", "2/2"...) are packed with their class (het, hom-alt or missing) and kept as
+ * is in a sidecar string "index:GT,index:GT...", so that decoding gives back the original GT of every strain.
+ *
+ * A strain can also be absent from the row (no genotype recorded for it, e.g. the sanger strains of the existing
+ * sanger variants in the snpgrid rows): the absent strains are flagged in a separate mask of 1 bit per strain (first
+ * strain in the lowest bit of the first byte), so that they are not taken for missing genotypes.
+ * At most MAX_SIZE strains fit in a row (VARBINARY(4096) genotypes column).
+ */
+public class PackedGenotypes {
+
+    public static final int REF = 0;
+    public static final int HET = 1;
+    public static final int HOM_ALT = 2;
+    public static final int MISSING = 3;
+
+    public static final int MAX_SIZE = 4096 * 4;
+
+    private static final String[] CANONICAL_GENOTYPES = new String[]{"0/0", "0/1", "1/1", "./."};
+
+    private final int size;
+    private final byte[] packed;
+    private final Map<Integer, String> otherGenotypes = new TreeMap<>();
+    private byte[] absent;
+
+    /**
+     * @param size number of strains, all missing until set
+     */
+    public PackedGenotypes(int size) {
+        if (size < 0 || size > MAX_SIZE)
+            throw new IllegalArgumentException("At most " + MAX_SIZE + " strains can be packed, got " + size);
+        this.size = size;
+        this.packed = new byte[(size + 3) / 4];
+        Arrays.fill(packed, (byte) 0xFF);
+    }
+
+    /**
+     * Decode packed genotypes
+     *
+     * @param packed         packed genotypes
+     * @param size           number of strains
+     * @param otherGenotypes sidecar of the uncommon GTs, can be null or empty
+     * @param absent         mask of the absent strains, null if none
+     * @return the genotypes
+     */
+    public static PackedGenotypes decode(byte[] packed, int size, String otherGenotypes, byte[] absent) {
+        if (packed.length != (size + 3) / 4)
+            throw new IllegalArgumentException("Expected " + (size + 3) / 4 + " bytes for " + size + " strains, got " + packed.length);
+        PackedGenotypes genotypes = new PackedGenotypes(size);
+        System.arraycopy(packed, 0, genotypes.packed, 0, packed.length);
+        if (absent != null) {
+            if (absent.length != (size + 7) / 8)
+                throw new IllegalArgumentException("Expected " + (size + 7) / 8 + " mask bytes for " + size + " strains, got " + absent.length);
+            genotypes.absent = absent.clone();
+        }
+        if (otherGenotypes != null && !otherGenotypes.isEmpty()) {
+            for (String entry : otherGenotypes.split(",")) {
+                int idx = entry.indexOf(':');
+                if (idx == -1)
+                    throw new IllegalArgumentException("Invalid uncommon genotype entry: " + entry);
+                genotypes.otherGenotypes.put(Integer.valueOf(entry.substring(0, idx)), entry.substring(idx + 1));
+            }
+        }
+        return genotypes;
+    }
+
+    /**
+     * @param gt GT value (0/0, 1|1, 1/2, ./., 1...)
+     * @return class of the GT: REF, HET, HOM_ALT or MISSING
+     */
+    public static int classify(String gt) {
+        String[] alleles = gt.split("[/|]", -1);
+        for (String allele : alleles) {
+            if (allele.isEmpty() || allele.equals("."))
+                return MISSING;
+        }
+        for (String allele : alleles) {
+            if (!allele.equals(alleles[0]))
+                return HET;
+        }
+        return alleles[0].equals("0") ? REF : HOM_ALT;
+    }
+
+    /**
+     * Set the genotype of a strain
+     *
+     * @param index strain index
+     * @param gt    GT value
+     */
+    public void set(int index, String gt) {
+        int code = classify(gt);
+        setCode(index, code);
+        if (absent != null)
+            absent[index >> 3] &= ~(1 << (index & 7));
+        if (gt.equals(CANONICAL_GENOTYPES[code]))
+            otherGenotypes.remove(index);
+        else
+            otherGenotypes.put(index, gt);
+    }
+
+    /**
+     * Flag a strain as absent from the row: no genotype is recorded for it
+     *
+     * @param index strain index
+     */
+    public void setAbsent(int index) {
+        setCode(index, MISSING);
+        otherGenotypes.remove(index);
+        if (absent == null)
+            absent = new byte[(size + 7) / 8];
+        absent[index >> 3] |= 1 << (index & 7);
+    }
+
+    /**
+     * @param index strain index
+     * @return true if the strain is absent from the row
+     */
+    public boolean isAbsent(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Strain index " + index + " out of " + size);
+        return absent != null && (absent[index >> 3] & (1 << (index & 7))) != 0;
+    }
+
+    private void setCode(int index, int code) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Strain index " + index + " out of " + size);
+        int shift = (index & 3) * 2;
+        packed[index >> 2] = (byte) ((packed[index >> 2] & ~(3 << shift)) | (code << shift));
+    }
+
+    /**
+     * @param index strain index
+     * @return the 2-bit class of the genotype of the strain
+     */
+    public int getCode(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Strain index " + index + " out of " + size);
+        return (packed[index >> 2] >> ((index & 3) * 2)) & 3;
+    }
+
+    /**
+     * @param index strain index
+     * @return the GT of the strain, null if the strain is absent
+     */
+    public String get(int index) {
+        if (isAbsent(index))
+            return null;
+        String other = otherGenotypes.get(index);
+        return other != null ? other : CANONICAL_GENOTYPES[getCode(index)];
+    }
+
+    /**
+     * @return number of strains
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the packed genotypes
+     */
+    public byte[] toBytes() {
+        return packed.clone();
+    }
+
+    /**
+     * @return the mask of the absent strains, null if there is none
+     */
+    public byte[] getAbsentMask() {
+        if (absent == null)
+            return null;
+        for (byte b : absent) {
+            if (b != 0)
+                return absent.clone();
+        }
+        return null;
+    }
+
+    /**
+     * @return the sidecar of the uncommon GTs ("index:GT,index:GT..."), null if there is none
+     */
+    public String getOtherGenotypes() {
+        if (otherGenotypes.isEmpty())
+            return null;
+        StringBuilder sidecar = new StringBuilder();
+        for (Map.Entry<Integer, String> entry : otherGenotypes.entrySet()) {
+            if (sidecar.length() > 0)
+                sidecar.append(',');
+            sidecar.append(entry.getKey()).append(':').append(entry.getValue());
+        }
+        return sidecar.toString();
+    }
+}
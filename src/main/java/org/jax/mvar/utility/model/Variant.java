@@ -13,6 +13,7 @@ public class Variant {
     String filter;
     String hgvsg;
     String jannovarAnnotation;
+    VariantAnnotation annotation;
     String info;
     String format;
     String genotypeData;
@@ -29,7 +30,8 @@ public class Variant {
     public Variant(String chr, String pos, String id, String ref, String alt, String qual, String filter,
                    String format, String hgvsg, String proteinPosition, String aminoAcidChange,
                    String jannovarAnnotation, String genotypeData) {
-        this.chr = chr.replace("ch", "").replace("r", "");
+        // most files have no "chr" prefix: only build a new String when there is something to remove
+        this.chr = chr.indexOf('r') < 0 && !chr.contains("ch") ? chr : chr.replace("ch", "").replace("r", "");
         this.pos = pos;
         this.id = id;
         this.ref = ref;
@@ -44,7 +46,8 @@ public class Variant {
         this.genotypeData = genotypeData;
         // default value set to false
         this.exists = false;
-        this.variantRefTxt = chr.concat("_").concat(pos).concat("_").concat(ref).concat("_").concat(alt);
+        this.variantRefTxt = new StringBuilder(chr.length() + pos.length() + ref.length() + alt.length() + 3)
+                .append(chr).append('_').append(pos).append('_').append(ref).append('_').append(alt).toString();
         setType(this.ref, this.alt);
     }
 
@@ -105,6 +108,17 @@ public class Variant {
         return jannovarAnnotation;
     }
 
+    /**
+     * @return the parsed jannovar annotation, null until the batch of the variant is prepared for insertion
+     */
+    public VariantAnnotation getAnnotation() {
+        return annotation;
+    }
+
+    public void setAnnotation(VariantAnnotation annotation) {
+        this.annotation = annotation;
+    }
+
     public String getVariantRefTxt() {
         return variantRefTxt;
     }
@@ -0,0 +1,65 @@
+package org.jax.mvar.utility.model;
+
+/**
+ * Functional annotations (jannovar ANN) of a variant, parsed once when the batch is prepared and kept with the
+ * variant until it is inserted. Only the values inserted in the DB are retained: the gene name and transcript id
+ * of each annotation and the comma separated annotations, HGVS.c, HGVS.p and impacts.
+ */
+public class VariantAnnotation {
+
+    private final String[] geneNames;
+    private final String[] transcriptIds;
+    private final String annotation;
+    private final String hgvsC;
+    private final String hgvsP;
+    private final String annotationImpact;
+
+    /**
+     * @param geneNames        gene name of each annotation
+     * @param transcriptIds    transcript id (without version) of each annotation
+     * @param annotation       concatenated annotations (consequences)
+     * @param hgvsC            concatenated HGVS.c
+     * @param hgvsP            concatenated HGVS.p
+     * @param annotationImpact concatenated impacts
+     */
+    public VariantAnnotation(String[] geneNames, String[] transcriptIds, String annotation, String hgvsC, String hgvsP,
+                             String annotationImpact) {
+        this.geneNames = geneNames;
+        this.transcriptIds = transcriptIds;
+        this.annotation = annotation;
+        this.hgvsC = hgvsC;
+        this.hgvsP = hgvsP;
+        this.annotationImpact = annotationImpact;
+    }
+
+    public String[] getGeneNames() {
+        return geneNames;
+    }
+
+    /**
+     * @return the gene name of the first annotation, the gene linked to the variant
+     */
+    public String getFirstGeneName() {
+        return geneNames[0];
+    }
+
+    public String[] getTranscriptIds() {
+        return transcriptIds;
+    }
+
+    public String getAnnotation() {
+        return annotation;
+    }
+
+    public String getHgvsC() {
+        return hgvsC;
+    }
+
+    public String getHgvsP() {
+        return hgvsP;
+    }
+
+    public String getAnnotationImpact() {
+        return annotationImpact;
+    }
+}
@@ -0,0 +1,54 @@
+package org.jax.mvar.utility.parser;
+
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+
+/**
+ * One annotation (transcript) of an INFO entry such as ANN or CSQ.
+ *
+ * The annotation does not copy its values: it keeps the INFO string it comes from (shared by all the annotations
+ * of the entry) and the offsets of its fields. A value is only extracted when it is requested.
+ * The key to field index map is built once from the header by the parser and shared by all its annotations.
+ */
+public class Annotation {
+
+    private final String source;
+    // start of each field, the last element being the end of the last field + 1 (as if followed by a separator)
+    private final int[] offsets;
+    private final ObjectIntHashMap<String> keyIndex;
+
+    /**
+     * @param source   string holding the annotation
+     * @param offsets  start offset of each field in the source, followed by the end offset of the last field + 1
+     * @param keyIndex index of each annotation key
+     */
+    Annotation(String source, int[] offsets, ObjectIntHashMap<String> keyIndex) {
+        this.source = source;
+        this.offsets = offsets;
+        this.keyIndex = keyIndex;
+    }
+
+    /**
+     * @param key annotation key (e.g. Gene_Name)
+     * @return the value of the key, null if the key is not in the annotation
+     */
+    public String get(String key) {
+        return get(keyIndex.getIfAbsent(key, -1));
+    }
+
+    /**
+     * @param index field index, see InfoParser.getAnnotationKeyIndex
+     * @return the value of the field, null if there is no such field
+     */
+    public String get(int index) {
+        if (index < 0 || index >= size())
+            return null;
+        return source.substring(offsets[index], offsets[index + 1] - 1);
+    }
+
+    /**
+     * @return number of fields
+     */
+    public int size() {
+        return offsets.length - 1;
+    }
+}
@@ -2,7 +2,6 @@ package org.jax.mvar.utility.parser;
 
 import java.io.File;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Class used to parse the INFO column of a VCF variant row entry with the ANN id
@@ -36,7 +35,7 @@ public class AnnotationParser extends InfoParser {
     }
 
     @Override
-    public List<Map<String, String>> parse(String infoString) throws Exception {
+    public List<Annotation> parse(String infoString) throws Exception {
         // Functional annotations: Allele|Annotation|Annotation_Impact|Gene_Name|Gene_ID|Feature_Type|Feature_ID|Transcript_BioType|Rank|HGVS.c|HGVS.p|cDNA.pos / cDNA.length|CDS.pos / CDS.length|AA.pos / AA.length|Distance|ERRORS / WARNINGS / INFO'
         return super.parse(infoString);
     }
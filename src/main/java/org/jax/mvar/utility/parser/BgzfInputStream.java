@@ -0,0 +1,264 @@
+package org.jax.mvar.utility.parser;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * InputStream decompressing a BGZF file (bgzip, as produced by htslib/tabix) with a pool of threads.
+ *
+ * A BGZF file is a series of gzip members (blocks) of at most 64KB, each one holding its compressed size in the
+ * "BC" extra subfield. Blocks can therefore be read without being inflated and are decompressed independently on
+ * the thread pool, the decompressed data being handed out in file order.
+ * Positions in the file are given as BGZF virtual offsets: the address of the compressed block shifted by 16 bits,
+ * plus the offset in the uncompressed block.
+ * See https://samtools.github.io/hts-specs/SAMv1.pdf (section 4.1) for the format.
+ */
+public class BgzfInputStream extends InputStream {
+
+    private static final int BLOCK_HEADER_LENGTH = 18;
+    private static final int MAX_BLOCK_SIZE = 65536;
+
+    private final InputStream in;
+    private final ExecutorService executor;
+    private final int maxBlocksInFlight;
+    private final Deque<Block> blocks = new ArrayDeque<>();
+
+    private boolean endOfInput = false;
+    private long readAddress;
+    private byte[] current = new byte[0];
+    private int currentPos = 0;
+    private long currentAddress;
+    private long nextAddress;
+
+    /**
+     * @param in      compressed BGZF input stream
+     * @param threads number of decompression threads
+     */
+    public BgzfInputStream(InputStream in, int threads) {
+        this(in, 0, threads);
+    }
+
+    /**
+     * @param in      compressed BGZF input stream, positioned at the start of a block
+     * @param address address of that block in the file
+     * @param threads number of decompression threads
+     */
+    private BgzfInputStream(InputStream in, long address, int threads) {
+        this.in = in instanceof BufferedInputStream ? in : new BufferedInputStream(in, 1 << 20);
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.maxBlocksInFlight = threads * 8;
+        this.readAddress = address;
+        this.currentAddress = address;
+        this.nextAddress = address;
+    }
+
+    /**
+     * Opens a BGZF file at a given virtual offset
+     * @param file          BGZF file
+     * @param virtualOffset virtual offset to start reading from
+     * @param threads       number of decompression threads
+     * @return the stream positioned at the virtual offset
+     * @throws IOException
+     */
+    public static BgzfInputStream open(File file, long virtualOffset, int threads) throws IOException {
+        long address = virtualOffset >>> 16;
+        int blockOffset = (int) (virtualOffset & 0xffff);
+        FileInputStream fis = new FileInputStream(file);
+        BgzfInputStream is = null;
+        try {
+            fis.getChannel().position(address);
+            is = new BgzfInputStream(fis, address, threads);
+            if (blockOffset > 0) {
+                if (!is.nextBlock() || blockOffset > is.current.length)
+                    throw new IOException("Invalid virtual offset " + virtualOffset + " for " + file.getName());
+                is.currentPos = blockOffset;
+            }
+            return is;
+        } catch (IOException exc) {
+            if (is != null)
+                is.close();
+            else
+                fis.close();
+            throw exc;
+        }
+    }
+
+    /**
+     * @return the virtual offset of the next byte to be read
+     */
+    public long getVirtualOffset() {
+        if (currentPos < current.length)
+            return (currentAddress << 16) | currentPos;
+        return nextAddress << 16;
+    }
+
+    /**
+     * Checks whether a file is a BGZF file by looking at the header of its first block
+     * @param file gzipped file
+     * @return true if the file is BGZF, false if it is a plain gzip file (or not gzip at all)
+     * @throws IOException
+     */
+    public static boolean isBgzf(File file) throws IOException {
+        byte[] header = new byte[BLOCK_HEADER_LENGTH];
+        try (DataInputStream is = new DataInputStream(new FileInputStream(file))) {
+            is.readFully(header);
+        } catch (EOFException exc) {
+            return false;
+        }
+        return isBgzfHeader(header);
+    }
+
+    private static boolean isBgzfHeader(byte[] header) {
+        return (header[0] & 0xff) == 31 && (header[1] & 0xff) == 139 && header[2] == 8 && (header[3] & 4) != 0
+                && unsignedShort(header, 10) >= 6 && header[12] == 'B' && header[13] == 'C' && unsignedShort(header, 14) == 2;
+    }
+
+    private static int unsignedShort(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xff) | ((buffer[offset + 1] & 0xff) << 8);
+    }
+
+    private static int signedInt(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xff) | ((buffer[offset + 1] & 0xff) << 8) | ((buffer[offset + 2] & 0xff) << 16) | ((buffer[offset + 3] & 0xff) << 24);
+    }
+
+    /**
+     * Read the next compressed block and submit it for decompression, keeping a bounded number of blocks in flight.
+     */
+    private void scheduleBlocks() throws IOException {
+        while (!endOfInput && blocks.size() < maxBlocksInFlight) {
+            byte[] header = new byte[BLOCK_HEADER_LENGTH];
+            int read = readFully(header, 0, header.length);
+            if (read == 0) {
+                endOfInput = true;
+                return;
+            }
+            if (read < header.length || !isBgzfHeader(header))
+                throw new IOException("Invalid BGZF block header.");
+            int extraLength = unsignedShort(header, 10);
+            int blockSize = unsignedShort(header, 16) + 1;
+            // the rest of the block: remaining extra subfields, compressed data, CRC32 and ISIZE
+            byte[] block = new byte[blockSize - BLOCK_HEADER_LENGTH];
+            if (readFully(block, 0, block.length) < block.length)
+                throw new IOException("Truncated BGZF block.");
+            int dataOffset = extraLength - 6;
+            int dataLength = block.length - dataOffset - 8;
+            blocks.add(new Block(executor.submit(() -> inflate(block, dataOffset, dataLength)), readAddress, readAddress + blockSize));
+            readAddress += blockSize;
+        }
+    }
+
+    private static byte[] inflate(byte[] block, int dataOffset, int dataLength) throws IOException {
+        int expectedCrc = signedInt(block, block.length - 8);
+        int uncompressedSize = signedInt(block, block.length - 4);
+        if (uncompressedSize < 0 || uncompressedSize > MAX_BLOCK_SIZE)
+            throw new IOException("Invalid BGZF block size: " + uncompressedSize);
+        byte[] data = new byte[uncompressedSize];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(block, dataOffset, dataLength);
+            int length = 0;
+            while (length < uncompressedSize) {
+                int inflated = inflater.inflate(data, length, uncompressedSize - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput()))
+                    break;
+                length += inflated;
+            }
+            if (length != uncompressedSize)
+                throw new IOException("BGZF block inflated to " + length + " bytes instead of " + uncompressedSize);
+        } catch (DataFormatException exc) {
+            throw new IOException("Corrupted BGZF block: " + exc.getMessage(), exc);
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        if ((int) crc.getValue() != expectedCrc)
+            throw new IOException("BGZF block CRC mismatch.");
+        return data;
+    }
+
+    private int readFully(byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = in.read(buffer, offset + total, length - total);
+            if (read < 0)
+                break;
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Move to the next decompressed block
+     * @return false if there is no more data
+     */
+    private boolean nextBlock() throws IOException {
+        while (currentPos >= current.length) {
+            scheduleBlocks();
+            Block block = blocks.poll();
+            if (block == null)
+                return false;
+            try {
+                current = block.data.get();
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while decompressing.");
+            } catch (ExecutionException exc) {
+                throw exc.getCause() instanceof IOException ? (IOException) exc.getCause() : new IOException(exc.getCause());
+            }
+            currentPos = 0;
+            currentAddress = block.address;
+            nextAddress = block.nextAddress;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextBlock())
+            return -1;
+        return current[currentPos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0)
+            return 0;
+        if (!nextBlock())
+            return -1;
+        int count = Math.min(length, current.length - currentPos);
+        System.arraycopy(current, currentPos, buffer, offset, count);
+        currentPos += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Block block : blocks) {
+            block.data.cancel(true);
+        }
+        blocks.clear();
+        executor.shutdownNow();
+        in.close();
+    }
+
+    /**
+     * Block being decompressed, with its address and the address of the following block
+     */
+    private static class Block {
+        private final Future<byte[]> data;
+        private final long address;
+        private final long nextAddress;
+
+        Block(Future<byte[]> data, long address, long nextAddress) {
+            this.data = data;
+            this.address = address;
+            this.nextAddress = nextAddress;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.jax.mvar.utility.parser;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe Bloom filter of string keys (variant_ref_txt).
+ * mightContain never returns false for a key that was added; it returns true for a key that was not added
+ * with (about) the false positive rate the filter was sized for.
+ */
+class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * @param expectedKeys      number of keys the filter is sized for
+     * @param falsePositiveRate false positive rate expected once the filter holds expectedKeys keys
+     */
+    BloomFilter(long expectedKeys, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1)
+            throw new IllegalArgumentException("The false positive rate must be between 0 and 1, was " + falsePositiveRate);
+        long keys = Math.max(expectedKeys, 1);
+        long bitsNeeded = (long) Math.ceil(-keys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min((bitsNeeded + 63) / 64, Integer.MAX_VALUE - 8);
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = words * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / keys * Math.log(2)));
+    }
+
+    /**
+     * @param key key to add
+     */
+    void add(CharSequence key) {
+        long hash1 = hash64(key);
+        long hash2 = mix(hash1 ^ 0x9e3779b97f4a7c15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long value;
+            while (((value = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, value, value | mask)) {
+                // another thread changed the word, try again
+            }
+        }
+    }
+
+    /**
+     * @param key key to look for
+     * @return false if the key was never added, true if it may have been added
+     */
+    boolean mightContain(CharSequence key) {
+        long hash1 = hash64(key);
+        long hash2 = mix(hash1 ^ 0x9e3779b97f4a7c15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    long getBitCount() {
+        return bitCount;
+    }
+
+    int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * 64 bit hash of a key (FNV-1a of the characters followed by a final avalanche)
+     *
+     * @param key key
+     * @return hash of the key
+     */
+    static long hash64(CharSequence key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
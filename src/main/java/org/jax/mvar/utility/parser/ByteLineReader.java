@@ -0,0 +1,108 @@
+package org.jax.mvar.utility.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads lines of an InputStream into a reusable byte buffer, without decoding them into Strings.
+ * The current line is only valid until the next call to readLine.
+ */
+class ByteLineReader implements Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    private final InputStream in;
+    private byte[] buffer;
+    private int position = 0;
+    private int limit = 0;
+    private boolean endOfStream = false;
+    private int lineStart;
+    private int lineLength;
+
+    ByteLineReader(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param in         input stream
+     * @param bufferSize initial buffer size, the buffer grows if a line is longer
+     */
+    ByteLineReader(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Read the next line, "\n" and "\r\n" terminators being removed
+     * @return false if there are no more lines
+     * @throws IOException
+     */
+    boolean readLine() throws IOException {
+        int scan = position;
+        while (true) {
+            while (scan < limit && buffer[scan] != '\n')
+                scan++;
+            if (scan < limit) {
+                setLine(position, scan);
+                position = scan + 1;
+                return true;
+            }
+            if (endOfStream) {
+                if (position == limit)
+                    return false;
+                setLine(position, limit);
+                position = limit;
+                return true;
+            }
+            // incomplete line: move it to the start of the buffer (growing it if needed) and read more data
+            if (position > 0) {
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                scan -= position;
+                limit -= position;
+                position = 0;
+            }
+            if (limit == buffer.length)
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0)
+                endOfStream = true;
+            else
+                limit += read;
+        }
+    }
+
+    private void setLine(int start, int end) {
+        if (end > start && buffer[end - 1] == '\r')
+            end--;
+        lineStart = start;
+        lineLength = end - start;
+    }
+
+    /**
+     * @return the buffer holding the current line
+     */
+    byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return offset of the current line in the buffer
+     */
+    int getLineStart() {
+        return lineStart;
+    }
+
+    /**
+     * @return length of the current line
+     */
+    int getLineLength() {
+        return lineLength;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,363 @@
+package org.jax.mvar.utility.parser;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.jax.mvar.utility.Config;
+import org.jax.mvar.utility.model.Variant;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Looks for the variants that already exist in the MVAR DB (canonical check).
+ *
+ * The variant_ref_txt keys of a batch are looked up in chunks of bounded size, the chunks being spread over
+ * several connections. Optionally, a Bloom filter of all the variant_ref_txt keys of the DB is built once when
+ * the checker is opened: the variants that are not in the filter are new and are not looked up at all.
+ * If a canonical key index (see CanonicalKeyIndex) is given, it is synchronized with the DB when the checker is
+ * opened and the variants are only looked up in the index: the DB is not queried at all.
+ * The new variants inserted while the checker is open need to be added (see addNew) so that they are found
+ * when they appear again, e.g. in another file of the same run.
+ * The insertion checks its batches with checkAndClaim: the new variants of a batch are claimed until the batch is
+ * committed (see CanonicalClaims), so that a batch checked concurrently by another worker (or read ahead by a
+ * pipeline) reuses their ids instead of inserting them again. The claim of a batch that is not written needs to be
+ * abandoned: the batches reusing its ids then insert the variants themselves.
+ *
+ * One checker can be shared by all the insertion workers of a run.
+ */
+public class CanonicalChecker implements AutoCloseable {
+
+    // maximum number of keys per lookup query
+    static final int CHUNK_SIZE = 1000;
+    private static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+
+    private final String table;
+    private final BlockingQueue<Connection> connections;
+    private final List<Connection> allConnections;
+    private final ExecutorService executor;
+    private BloomFilter bloomFilter;
+    private CanonicalKeyIndex keyIndex;
+    private final CanonicalClaims claims = new CanonicalClaims();
+
+    private final AtomicLong checkedCount = new AtomicLong();
+    private final AtomicLong lookedUpCount = new AtomicLong();
+    private final AtomicLong foundCount = new AtomicLong();
+
+    private CanonicalChecker(String table, List<Connection> connections) {
+        this.table = table;
+        this.allConnections = connections;
+        this.connections = new ArrayBlockingQueue<>(connections.size(), false, connections);
+        this.executor = Executors.newFixedThreadPool(connections.size());
+    }
+
+    /**
+     * Open a canonical checker
+     *
+     * @param connectionNumber number of connections (and of chunks looked up concurrently)
+     * @param withBloomFilter  if true, a Bloom filter of the existing variants is built from the DB
+     * @return the checker, to be closed by the caller
+     * @throws SQLException
+     * @throws IOException
+     */
+    public static CanonicalChecker open(int connectionNumber, boolean withBloomFilter) throws SQLException, IOException {
+        return open(connectionNumber, withBloomFilter, null);
+    }
+
+    /**
+     * Open a canonical checker using a canonical key index
+     *
+     * @param connectionNumber number of connections (and of chunks looked up concurrently)
+     * @param withBloomFilter  if true, a Bloom filter of the existing variants is built from the DB (not used with an index)
+     * @param indexFile        canonical key index file, created if it doesn't exist, null to look up the variants in the DB
+     * @return the checker, to be closed by the caller
+     * @throws SQLException
+     * @throws IOException if the index can't be opened
+     */
+    public static CanonicalChecker open(int connectionNumber, boolean withBloomFilter, File indexFile) throws SQLException, IOException {
+        CanonicalChecker checker = new CanonicalChecker("variant", openConnections(connectionNumber));
+        try {
+            if (indexFile != null) {
+                checker.keyIndex = CanonicalKeyIndex.open(indexFile);
+                checker.keyIndex.sync(checker.allConnections.get(0));
+            } else if (withBloomFilter) {
+                checker.bloomFilter = buildBloomFilter(checker.allConnections.get(0));
+            }
+        } catch (SQLException | IOException exc) {
+            checker.close();
+            throw exc;
+        }
+        return checker;
+    }
+
+    /**
+     * Open a checker looking up the canonical ids of the variant_canon_identifier table instead of the variant ids
+     *
+     * @param connectionNumber number of connections (and of chunks looked up concurrently)
+     * @return the checker, to be closed by the caller
+     * @throws SQLException
+     */
+    public static CanonicalChecker openCanonicalIdentifiers(int connectionNumber) throws SQLException {
+        return new CanonicalChecker("variant_canon_identifier", openConnections(connectionNumber));
+    }
+
+    private static List<Connection> openConnections(int connectionNumber) throws SQLException {
+        List<Connection> connections = new ArrayList<>();
+        try {
+            for (int i = 0; i < Math.max(connectionNumber, 1); i++) {
+                connections.add(Config.getConnection());
+            }
+        } catch (SQLException exc) {
+            for (Connection connection : connections)
+                connection.close();
+            throw exc;
+        }
+        return connections;
+    }
+
+    /**
+     * Streams all the variant_ref_txt keys of the variant table into a Bloom filter
+     */
+    private static BloomFilter buildBloomFilter(Connection connection) throws SQLException {
+        System.out.println("Building the Bloom filter of the existing variants, " + new Date());
+        final StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        long maxId = 0;
+        try (PreparedStatement maxStmt = connection.prepareStatement("SELECT MAX(id) FROM variant");
+             ResultSet result = maxStmt.executeQuery()) {
+            if (result.next())
+                maxId = result.getLong(1);
+        }
+        // room for the variants inserted during the run
+        BloomFilter filter = new BloomFilter(maxId + maxId / 2 + 1_000_000, BLOOM_FALSE_POSITIVE_RATE);
+        long count = 0;
+        try (PreparedStatement selectStmt = connection.prepareStatement("SELECT variant_ref_txt FROM variant",
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // stream the rows instead of loading the whole result set
+            selectStmt.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet result = selectStmt.executeQuery()) {
+                while (result.next()) {
+                    String key = result.getString(1);
+                    if (key != null) {
+                        filter.add(key);
+                        count++;
+                    }
+                }
+            }
+        }
+        System.out.println("Bloom filter of " + count + " variants (" + filter.getBitCount() / (8 * 1024 * 1024) + " MB, "
+                + filter.getHashCount() + " hashes) built in " + stopWatch + ", " + new Date());
+        return filter;
+    }
+
+    /**
+     * Look for the given variations in the MVAR DB. Variants found are flagged as existing
+     * and get the id of the variant already in the DB.
+     *
+     * @param variations LinkedHashMap of variations (key is variant_ref_txt)
+     * @return number of canonical variants found
+     * @throws Exception
+     */
+    public int check(Map<String, Variant> variations) throws Exception {
+        if (keyIndex != null)
+            return checkIndex(variations);
+        List<String> candidates = new ArrayList<>(variations.size());
+        for (String key : variations.keySet()) {
+            if (bloomFilter == null || bloomFilter.mightContain(key))
+                candidates.add(key);
+        }
+        int found = 0;
+        if (candidates.size() <= CHUNK_SIZE) {
+            found = lookup(candidates, variations);
+        } else {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int from = 0; from < candidates.size(); from += CHUNK_SIZE) {
+                final List<String> chunk = candidates.subList(from, Math.min(from + CHUNK_SIZE, candidates.size()));
+                futures.add(executor.submit(() -> lookup(chunk, variations)));
+            }
+            try {
+                for (Future<Integer> future : futures)
+                    found += future.get();
+            } catch (ExecutionException exc) {
+                throw exc.getCause() instanceof Exception ? (Exception) exc.getCause() : exc;
+            } finally {
+                for (Future<Integer> future : futures)
+                    future.cancel(true);
+            }
+        }
+        checkedCount.addAndGet(variations.size());
+        lookedUpCount.addAndGet(candidates.size());
+        foundCount.addAndGet(found);
+        System.out.println(found + " canonical variants were found (" + candidates.size() + " of " + variations.size() + " variants looked up).");
+        return found;
+    }
+
+    /**
+     * Look for the given variations in the MVAR DB (see check) and among the new variants of the batches not yet
+     * committed, then claim the new variants. The variants claimed by another batch are flagged as existing and
+     * get the id reserved for them. The batch needs to wait for their claims (see awaitClaims) before being written.
+     * The claim is committed by addNew once the batch is committed, or else abandoned (see abandon).
+     *
+     * @param variations LinkedHashMap of variations (key is variant_ref_txt)
+     * @param reserveIds reserves a block of consecutive canonical ids (count -> first id)
+     * @return claim of the batch, with the id of its first new variant
+     * @throws Exception
+     */
+    public CanonicalClaim checkAndClaim(Map<String, Variant> variations, IntUnaryOperator reserveIds) throws Exception {
+        claims.checkLock().lock();
+        try {
+            check(variations);
+            return claims.claim(variations, reserveIds);
+        } finally {
+            claims.checkLock().unlock();
+        }
+    }
+
+    private int checkIndex(Map<String, Variant> variations) {
+        int found = 0;
+        for (Map.Entry<String, Variant> entry : variations.entrySet()) {
+            int id = keyIndex.get(entry.getKey());
+            if (id != -1) {
+                entry.getValue().setExists(true);
+                entry.getValue().setExistingId(id);
+                found++;
+            }
+        }
+        checkedCount.addAndGet(variations.size());
+        foundCount.addAndGet(found);
+        System.out.println(found + " canonical variants were found in the index (" + variations.size() + " variants).");
+        return found;
+    }
+
+    /**
+     * Look up one chunk of keys with one of the connections
+     */
+    private int lookup(List<String> keys, Map<String, Variant> variations) throws SQLException, InterruptedException {
+        if (keys.isEmpty())
+            return 0;
+        Connection connection = connections.take();
+        try {
+            return lookup(connection, table, keys, variations);
+        } finally {
+            connections.put(connection);
+        }
+    }
+
+    /**
+     * Look up one chunk of keys in the variant (or variant_canon_identifier) table
+     *
+     * @param connection jdbc connection
+     * @param table      variant or variant_canon_identifier
+     * @param keys       variant_ref_txt keys, at most CHUNK_SIZE
+     * @param variations variations by variant_ref_txt
+     * @return number of canonical variants found
+     * @throws SQLException
+     */
+    static int lookup(Connection connection, String table, List<String> keys, Map<String, Variant> variations) throws SQLException {
+        StringBuilder sql = new StringBuilder("select id, variant_ref_txt from ").append(table).append(" where variant_ref_txt in(");
+        for (int i = 0; i < keys.size(); i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        sql.append(")");
+        int found = 0;
+        try (PreparedStatement selectStmt = connection.prepareStatement(sql.toString())) {
+            for (int i = 0; i < keys.size(); i++) {
+                selectStmt.setString(i + 1, keys.get(i));
+            }
+            try (ResultSet result = selectStmt.executeQuery()) {
+                while (result.next()) {
+                    Variant var = variations.get(result.getString("variant_ref_txt"));
+                    if (var != null) {
+                        var.setExists(true);
+                        var.setExistingId(result.getInt("id"));
+                        found++;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Wait for the claims of the variants reused by a batch (see checkAndClaim) to be committed, before the batch is
+     * written. The variants of a claim abandoned meanwhile are taken over by the first batch reusing them: they are
+     * flagged as new again and keep the id reserved for them (see CanonicalClaim.isAdopted).
+     *
+     * @param claim claim of the batch
+     * @return variants taken over by the batch, to be inserted with it
+     * @throws InterruptedException
+     */
+    public List<Variant> awaitClaims(CanonicalClaim claim) throws InterruptedException {
+        return claims.await(claim);
+    }
+
+    /**
+     * Record the new variants of a batch once inserted (and committed), so that they are not taken for new
+     * variants again, and commit their claim (see checkAndClaim)
+     *
+     * @param variants variants of an inserted batch, the existing ones are ignored
+     * @param claim    claim of the batch
+     * @throws IOException if the variants can't be added to the index
+     */
+    public void addNew(Collection<Variant> variants, CanonicalClaim claim) throws IOException {
+        try {
+            if (bloomFilter != null || keyIndex != null) {
+                int id = claim.getFirstNewId();
+                for (Variant variant : variants) {
+                    if (variant.getExists())
+                        continue;
+                    int variantId = claim.isAdopted(variant) ? variant.getExistingId() : id++;
+                    if (keyIndex != null)
+                        keyIndex.put(variant.getVariantRefTxt(), variantId);
+                    else
+                        bloomFilter.add(variant.getVariantRefTxt());
+                }
+            }
+        } finally {
+            // the batch is committed: the variants are now found by the lookups
+            claims.commit(claim);
+        }
+    }
+
+    /**
+     * Abandon the claim of a batch that is not written (failed, or the insertion stopped before writing it).
+     * Nothing is done if the claim was already committed by addNew.
+     *
+     * @param claim claim of the batch
+     */
+    public void abandon(CanonicalClaim claim) {
+        claims.abandon(claim);
+    }
+
+    /**
+     * Close the connections of the checker and print a summary of the checks
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        if (keyIndex != null) {
+            try {
+                keyIndex.close();
+            } catch (IOException exc) {
+                exc.printStackTrace();
+            }
+        }
+        for (Connection connection : allConnections) {
+            try {
+                connection.close();
+            } catch (SQLException exc) {
+                exc.printStackTrace();
+            }
+        }
+        if (checkedCount.get() > 0)
+            System.out.println("Canonical check: " + checkedCount + " variants checked, " + lookedUpCount
+                    + " looked up in the DB, " + foundCount + " found.");
+    }
+}
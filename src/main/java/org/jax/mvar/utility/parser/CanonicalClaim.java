@@ -0,0 +1,56 @@
+package org.jax.mvar.utility.parser;
+
+import org.jax.mvar.utility.model.Variant;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Claim of a batch checked for canonicals (see CanonicalChecker.checkAndClaim): the new variants of the batch, with
+ * their reserved ids, and the variants it reuses from the claims of other batches not yet committed.
+ *
+ * A claim is resolved once, either committed (CanonicalChecker.addNew) or abandoned if the batch is not written
+ * (CanonicalChecker.abandon). The variants of an abandoned claim are taken over by the first batch reusing them,
+ * which inserts them with the ids reserved by the abandoned claim.
+ * The state of a claim is guarded by the CanonicalClaims it belongs to.
+ */
+public class CanonicalClaim {
+
+    enum State {PENDING, COMMITTED, ABANDONED}
+
+    private final int firstNewId;
+    // keys of the variants inserted by the batch (its new variants and the variants taken over)
+    final List<String> owned = new ArrayList<>();
+    // variants reused from other claims, by variant_ref_txt
+    final Map<String, Variant> reused = new LinkedHashMap<>();
+    // keys of the variants taken over from abandoned claims
+    final Set<String> adopted = new HashSet<>();
+    State state = State.PENDING;
+    final CountDownLatch resolved = new CountDownLatch(1);
+
+    CanonicalClaim(int firstNewId) {
+        this.firstNewId = firstNewId;
+    }
+
+    /**
+     * @return id of the first new variant of the batch, the new variants having consecutive ids in the batch order
+     * (except the variants taken over, see isAdopted)
+     */
+    public int getFirstNewId() {
+        return firstNewId;
+    }
+
+    /**
+     * @param variant new variant of the batch
+     * @return true if the variant was taken over from an abandoned claim: it is inserted with the id reserved by that
+     * claim (its existing id) instead of the next id of the batch
+     */
+    public boolean isAdopted(Variant variant) {
+        return adopted.contains(variant.getVariantRefTxt());
+    }
+}
@@ -0,0 +1,193 @@
+package org.jax.mvar.utility.parser;
+
+import org.jax.mvar.utility.model.Variant;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * New variants checked but not yet committed (in flight), by variant_ref_txt, with the canonical id reserved for them.
+ *
+ * A batch checked while another batch with the same variants is being written (another file of the run, or the
+ * previous batch of a pipelined insertion) can't find them in the DB yet: its new variants are claimed, and the
+ * variants already claimed are flagged as existing with the id reserved by the first batch.
+ * The claims of a batch are released once it is committed (and added to the Bloom filter or the index). The
+ * release waits for the checks in progress, so that a check either sees the claim or starts after the commit.
+ * A batch reusing claimed variants waits for their claims to be resolved before being written (see await): if a
+ * claim is abandoned (the batch failed or was never written), each of its variants is taken over by the first batch
+ * waiting for it, so that the reserved id is inserted once and the other batches keep referencing it.
+ * A batch only waits for batches checked before it, so the batches written in the order they are checked (by a
+ * worker or a pipeline) can't wait for each other.
+ */
+class CanonicalClaims {
+
+    /**
+     * Variant claimed by a batch
+     */
+    private static final class Entry {
+        private final int id;
+        private CanonicalClaim owner;
+        // claims reusing the variant, in check order
+        private final List<CanonicalClaim> dependents = new ArrayList<>();
+
+        private Entry(int id, CanonicalClaim owner) {
+            this.id = id;
+            this.owner = owner;
+        }
+    }
+
+    private final Map<String, Entry> claims = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * @return lock held by a check from the lookup of its variants to their claim
+     */
+    Lock checkLock() {
+        return lock.readLock();
+    }
+
+    /**
+     * Claim the new variants of a batch. The variants already claimed by another batch are flagged as existing, with
+     * the id reserved for them; the ids of the other new variants are reserved at once.
+     *
+     * @param variations  variations of the batch, checked
+     * @param reserveIds  reserves a block of consecutive canonical ids (count -> first id)
+     * @return claim of the batch, with the id of its first new variant, the new variants having consecutive ids in
+     * the batch order
+     */
+    synchronized CanonicalClaim claim(Map<String, Variant> variations, IntUnaryOperator reserveIds) {
+        int newVariants = 0;
+        for (Map.Entry<String, Variant> entry : variations.entrySet()) {
+            Variant variant = entry.getValue();
+            if (variant.getExists())
+                continue;
+            Entry claimed = claims.get(entry.getKey());
+            if (claimed != null) {
+                variant.setExists(true);
+                variant.setExistingId(claimed.id);
+            } else {
+                newVariants++;
+            }
+        }
+        CanonicalClaim claim = new CanonicalClaim(reserveIds.applyAsInt(newVariants));
+        int id = claim.getFirstNewId();
+        for (Map.Entry<String, Variant> entry : variations.entrySet()) {
+            Entry claimed = claims.get(entry.getKey());
+            if (!entry.getValue().getExists()) {
+                claims.put(entry.getKey(), new Entry(id++, claim));
+                claim.owned.add(entry.getKey());
+            } else if (claimed != null && entry.getValue().getExistingId() == claimed.id) {
+                claimed.dependents.add(claim);
+                claim.reused.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return claim;
+    }
+
+    /**
+     * Wait for the claims of the variants reused by a batch to be committed. The variants of the abandoned claims
+     * taken over by the batch are flagged as new, keeping the id reserved for them (see CanonicalClaim.isAdopted).
+     *
+     * @param claim claim of the batch
+     * @return variants taken over by the batch
+     * @throws InterruptedException
+     */
+    List<Variant> await(CanonicalClaim claim) throws InterruptedException {
+        while (true) {
+            CanonicalClaim owner = null;
+            synchronized (this) {
+                if (claim.state != CanonicalClaim.State.PENDING)
+                    throw new IllegalStateException("The claim of the batch was already " + claim.state.name().toLowerCase());
+                for (String key : claim.reused.keySet()) {
+                    Entry claimed = claims.get(key);
+                    // released once committed, owned by the batch once taken over
+                    if (claimed != null && claimed.owner != claim) {
+                        owner = claimed.owner;
+                        break;
+                    }
+                }
+                if (owner == null) {
+                    List<Variant> adopted = new ArrayList<>();
+                    for (String key : claim.adopted) {
+                        Variant variant = claim.reused.remove(key);
+                        variant.setExists(false);
+                        adopted.add(variant);
+                    }
+                    claim.reused.clear();
+                    return adopted;
+                }
+            }
+            owner.resolved.await();
+        }
+    }
+
+    /**
+     * Release the claims of a committed batch
+     *
+     * @param claim claim of the batch
+     */
+    void commit(CanonicalClaim claim) {
+        lock.writeLock().lock();
+        try {
+            synchronized (this) {
+                if (claim.state != CanonicalClaim.State.PENDING)
+                    return;
+                for (String key : claim.owned)
+                    claims.remove(key);
+                removeDependent(claim);
+                claim.state = CanonicalClaim.State.COMMITTED;
+                claim.resolved.countDown();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Abandon the claims of a batch that is not written (nothing is done if already committed). Each variant of the
+     * batch reused by other batches is taken over by the first of them; the others are released.
+     *
+     * @param claim claim of the batch
+     */
+    synchronized void abandon(CanonicalClaim claim) {
+        if (claim.state != CanonicalClaim.State.PENDING)
+            return;
+        for (String key : claim.owned) {
+            Entry claimed = claims.get(key);
+            if (claimed.dependents.isEmpty()) {
+                claims.remove(key);
+            } else {
+                CanonicalClaim adopter = claimed.dependents.remove(0);
+                claimed.owner = adopter;
+                adopter.owned.add(key);
+                adopter.adopted.add(key);
+            }
+        }
+        removeDependent(claim);
+        claim.state = CanonicalClaim.State.ABANDONED;
+        claim.resolved.countDown();
+    }
+
+    /**
+     * Remove a resolved claim from the dependents of the variants it reuses (none once awaited)
+     */
+    private void removeDependent(CanonicalClaim claim) {
+        for (String key : claim.reused.keySet()) {
+            Entry claimed = claims.get(key);
+            if (claimed != null)
+                claimed.dependents.remove(claim);
+        }
+    }
+
+    /**
+     * @return number of variants claimed
+     */
+    synchronized int size() {
+        return claims.size();
+    }
+}
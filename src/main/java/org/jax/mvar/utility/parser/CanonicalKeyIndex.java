@@ -0,0 +1,381 @@
+package org.jax.mvar.utility.parser;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.jax.mvar.utility.Config;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Date;
+
+/**
+ * Local, persistent index of the variants of the MVAR DB: maps the variant_ref_txt of each variant to its id.
+ *
+ * The index is an open-addressing hash table (linear probing) stored in a file and memory mapped. Each slot holds
+ * a 64 bit hash and a 32 bit check hash of the key, and the variant id; the keys themselves are not stored.
+ * The variants of the DB only grow through the insertion, so the index is brought up to date incrementally:
+ * sync reads the variants with an id greater than the last id synchronized. The variants inserted during a run are
+ * added as they are written, and they are read again (at no harm) by the next sync.
+ *
+ * File layout: a 64 bytes header (magic, version, capacity, count, last synchronized id, open flag) followed by
+ * capacity slots of 16 bytes.
+ */
+public class CanonicalKeyIndex implements Closeable {
+
+    private static final int MAGIC = 0x4d434b31; // "MCK1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 16;
+    // a mapped buffer can't exceed 2GB, the slots are mapped in segments of 1GB
+    private static final int SEGMENT_SHIFT = 26;
+    private static final long SLOTS_PER_SEGMENT = 1L << SEGMENT_SHIFT;
+    private static final long MIN_CAPACITY = 1L << 16;
+    private static final double MAX_LOAD = 0.7;
+
+    private final File file;
+    private RandomAccessFile raf;
+    private MappedByteBuffer header;
+    private MappedByteBuffer[] segments;
+    private long capacity;
+    private long count;
+    private long lastSyncedId;
+
+    private CanonicalKeyIndex(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Open an index, creating it (empty) if the file doesn't exist
+     *
+     * @param file index file
+     * @return the index, to be closed by the caller
+     * @throws IOException
+     */
+    public static CanonicalKeyIndex open(File file) throws IOException {
+        return open(file, MIN_CAPACITY);
+    }
+
+    private static CanonicalKeyIndex open(File file, long initialCapacity) throws IOException {
+        CanonicalKeyIndex index = new CanonicalKeyIndex(file);
+        if (!file.exists() || file.length() == 0) {
+            index.create(initialCapacity);
+        } else {
+            index.map();
+            if (index.header.getInt(32) != 0) {
+                // the index was not closed: the count may be out of date
+                System.out.println("Canonical key index " + file.getName() + " was not closed properly, recounting its entries.");
+                index.count = index.recount();
+            }
+        }
+        index.header.putInt(32, 1);
+        index.header.force();
+        return index;
+    }
+
+    private void create(long initialCapacity) throws IOException {
+        long cap = MIN_CAPACITY;
+        while (cap < initialCapacity)
+            cap <<= 1;
+        try (RandomAccessFile newFile = new RandomAccessFile(file, "rw")) {
+            newFile.setLength(0);
+            newFile.setLength(HEADER_SIZE + cap * SLOT_SIZE);
+            newFile.writeInt(MAGIC);
+            newFile.writeInt(VERSION);
+            newFile.writeLong(cap);
+            newFile.writeLong(0);
+            newFile.writeLong(0);
+            newFile.writeInt(0);
+        }
+        map();
+    }
+
+    private void map() throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        FileChannel channel = raf.getChannel();
+        if (channel.size() < HEADER_SIZE) {
+            raf.close();
+            throw new IOException(file.getPath() + " is not a canonical key index, please rebuild it.");
+        }
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        capacity = header.getLong(8);
+        count = header.getLong(16);
+        lastSyncedId = header.getLong(24);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || Long.bitCount(capacity) != 1
+                || channel.size() != HEADER_SIZE + capacity * SLOT_SIZE) {
+            raf.close();
+            throw new IOException(file.getPath() + " is not a canonical key index or is truncated, please rebuild it.");
+        }
+        segments = new MappedByteBuffer[(int) ((capacity + SLOTS_PER_SEGMENT - 1) >>> SEGMENT_SHIFT)];
+        for (int i = 0; i < segments.length; i++) {
+            long slots = Math.min(SLOTS_PER_SEGMENT, capacity - ((long) i << SEGMENT_SHIFT));
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + ((long) i << SEGMENT_SHIFT) * SLOT_SIZE, slots * SLOT_SIZE);
+        }
+    }
+
+    /**
+     * @param key variant_ref_txt
+     * @return the id of the variant, -1 if the variant is not in the index
+     */
+    public synchronized int get(String key) {
+        long hash = hash(key);
+        int check = key.hashCode();
+        for (long slot = hash & (capacity - 1); ; slot = (slot + 1) & (capacity - 1)) {
+            MappedByteBuffer segment = segments[(int) (slot >>> SEGMENT_SHIFT)];
+            int offset = (int) (slot & (SLOTS_PER_SEGMENT - 1)) * SLOT_SIZE;
+            long slotHash = segment.getLong(offset);
+            if (slotHash == 0)
+                return -1;
+            if (slotHash == hash && segment.getInt(offset + 8) == check)
+                return segment.getInt(offset + 12);
+        }
+    }
+
+    /**
+     * Add a variant to the index, or update its id
+     *
+     * @param key variant_ref_txt
+     * @param id  variant id
+     * @throws IOException if the index needs to grow and can't
+     */
+    public synchronized void put(String key, int id) throws IOException {
+        if (count + 1 > capacity * MAX_LOAD)
+            grow();
+        if (putSlot(hash(key), key.hashCode(), id))
+            count++;
+    }
+
+    /**
+     * @return true if a new slot was used, false if an existing entry was updated
+     */
+    private boolean putSlot(long hash, int check, int id) {
+        for (long slot = hash & (capacity - 1); ; slot = (slot + 1) & (capacity - 1)) {
+            MappedByteBuffer segment = segments[(int) (slot >>> SEGMENT_SHIFT)];
+            int offset = (int) (slot & (SLOTS_PER_SEGMENT - 1)) * SLOT_SIZE;
+            long slotHash = segment.getLong(offset);
+            if (slotHash == 0) {
+                segment.putInt(offset + 8, check);
+                segment.putInt(offset + 12, id);
+                segment.putLong(offset, hash);
+                return true;
+            }
+            if (slotHash == hash && segment.getInt(offset + 8) == check) {
+                segment.putInt(offset + 12, id);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Double the capacity: the entries are copied to a new file that replaces the current one
+     */
+    private void grow() throws IOException {
+        File newFile = new File(file.getPath() + ".tmp");
+        CanonicalKeyIndex grown = new CanonicalKeyIndex(newFile);
+        grown.create(capacity * 2);
+        for (long slot = 0; slot < capacity; slot++) {
+            MappedByteBuffer segment = segments[(int) (slot >>> SEGMENT_SHIFT)];
+            int offset = (int) (slot & (SLOTS_PER_SEGMENT - 1)) * SLOT_SIZE;
+            long slotHash = segment.getLong(offset);
+            if (slotHash != 0)
+                grown.putSlot(slotHash, segment.getInt(offset + 8), segment.getInt(offset + 12));
+        }
+        grown.count = count;
+        grown.lastSyncedId = lastSyncedId;
+        grown.close();
+        unmap();
+        Files.move(newFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        map();
+        header.putInt(32, 1);
+    }
+
+    private long recount() {
+        long entries = 0;
+        for (long slot = 0; slot < capacity; slot++) {
+            if (segments[(int) (slot >>> SEGMENT_SHIFT)].getLong((int) (slot & (SLOTS_PER_SEGMENT - 1)) * SLOT_SIZE) != 0)
+                entries++;
+        }
+        return entries;
+    }
+
+    /**
+     * Bring the index up to date: add the variants of the DB with an id greater than the last id synchronized
+     *
+     * @param connection jdbc connection
+     * @return number of variants read from the DB
+     * @throws SQLException
+     * @throws IOException
+     */
+    public synchronized long sync(Connection connection) throws SQLException, IOException {
+        final StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        long read = 0, maxId = lastSyncedId;
+        try (PreparedStatement selectStmt = connection.prepareStatement("SELECT id, variant_ref_txt FROM variant WHERE id > ?",
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            selectStmt.setLong(1, lastSyncedId);
+            // stream the rows instead of loading the whole result set
+            selectStmt.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet result = selectStmt.executeQuery()) {
+                while (result.next()) {
+                    int id = result.getInt(1);
+                    String key = result.getString(2);
+                    if (key != null)
+                        put(key, id);
+                    maxId = Math.max(maxId, id);
+                    read++;
+                }
+            }
+        }
+        // the entries are on disk before the last synchronized id is moved
+        force();
+        lastSyncedId = maxId;
+        writeHeader();
+        System.out.println("Canonical key index " + file.getName() + " synchronized in " + stopWatch + ": " + read
+                + " variants added, " + count + " variants indexed up to id " + lastSyncedId + ", " + new Date());
+        return read;
+    }
+
+    /**
+     * Compare the index with the variants of the DB
+     *
+     * @param connection jdbc connection
+     * @return true if all the variants of the DB are in the index with their id and the index has no other entry
+     * @throws SQLException
+     */
+    public synchronized boolean verify(Connection connection) throws SQLException {
+        long checked = 0, missing = 0, wrongId = 0;
+        try (PreparedStatement selectStmt = connection.prepareStatement("SELECT id, variant_ref_txt FROM variant",
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            selectStmt.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet result = selectStmt.executeQuery()) {
+                while (result.next()) {
+                    String key = result.getString(2);
+                    if (key == null)
+                        continue;
+                    int indexedId = get(key);
+                    if (indexedId == -1)
+                        missing++;
+                    else if (indexedId != result.getInt(1))
+                        wrongId++;
+                    checked++;
+                }
+            }
+        }
+        long extra = count - (checked - missing);
+        System.out.println("Canonical key index " + file.getName() + ": " + checked + " variants checked, " + missing
+                + " missing, " + wrongId + " with a different id, " + extra + " entries not in the DB.");
+        return missing == 0 && wrongId == 0 && extra == 0;
+    }
+
+    /**
+     * Rebuild an index from scratch from the variants of the DB
+     *
+     * @param file       index file, replaced if it exists
+     * @param connection jdbc connection
+     * @return the index, to be closed by the caller
+     * @throws SQLException
+     * @throws IOException
+     */
+    public static CanonicalKeyIndex rebuild(File file, Connection connection) throws SQLException, IOException {
+        long variantCount = 0;
+        try (PreparedStatement countStmt = connection.prepareStatement("SELECT COUNT(*) FROM variant");
+             ResultSet result = countStmt.executeQuery()) {
+            if (result.next())
+                variantCount = result.getLong(1);
+        }
+        Files.deleteIfExists(file.toPath());
+        // sized to hold the variants of the DB without growing
+        CanonicalKeyIndex index = open(file, (long) (variantCount / MAX_LOAD) + 1);
+        try {
+            index.sync(connection);
+        } catch (SQLException | IOException exc) {
+            index.close();
+            throw exc;
+        }
+        return index;
+    }
+
+    /**
+     * Synchronize an index with the DB and verify it, or rebuild it (CANON_INDEX command)
+     *
+     * @param file    index file
+     * @param rebuild if true, the index is rebuilt from scratch
+     * @return true if the index is in sync with the DB
+     * @throws SQLException
+     * @throws IOException
+     */
+    public static boolean verifyOrRebuild(File file, boolean rebuild) throws SQLException, IOException {
+        try (Connection connection = Config.getConnection()) {
+            if (rebuild || !file.exists()) {
+                try (CanonicalKeyIndex index = rebuild(file, connection)) {
+                    System.out.println("Canonical key index " + file.getPath() + " built: " + index.size() + " variants.");
+                }
+                return true;
+            }
+            try (CanonicalKeyIndex index = open(file)) {
+                index.sync(connection);
+                boolean inSync = index.verify(connection);
+                if (!inSync)
+                    System.out.println("The canonical key index is out of sync with the DB, please rebuild it with -rebuild.");
+                return inSync;
+            }
+        }
+    }
+
+    /**
+     * @return number of variants in the index
+     */
+    public synchronized long size() {
+        return count;
+    }
+
+    /**
+     * @return id up to which all the variants of the DB are in the index
+     */
+    public synchronized long getLastSyncedId() {
+        return lastSyncedId;
+    }
+
+    private static long hash(String key) {
+        long hash = BloomFilter.hash64(key);
+        // 0 marks an empty slot
+        return hash == 0 ? 1 : hash;
+    }
+
+    private void writeHeader() {
+        header.putLong(8, capacity);
+        header.putLong(16, count);
+        header.putLong(24, lastSyncedId);
+        header.force();
+    }
+
+    private void force() {
+        for (MappedByteBuffer segment : segments)
+            segment.force();
+    }
+
+    private void unmap() throws IOException {
+        header = null;
+        segments = null;
+        raf.close();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (raf == null)
+            return;
+        force();
+        header.putInt(32, 0);
+        writeHeader();
+        unmap();
+        raf = null;
+    }
+}
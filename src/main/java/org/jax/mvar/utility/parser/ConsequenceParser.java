@@ -3,7 +3,6 @@ package org.jax.mvar.utility.parser;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * ##INFO=<ID=CSQ,Number=.,Type=String,Description="Consequence type from Ensembl 78 as predicted by VEP. Format: Allele|Gene|Feature|Feature_type|Consequence|cDNA_position|CDS_position|Protein_position|Amino_acids|Codons|Existing_variation|DISTANCE|STRAND">
@@ -26,7 +25,7 @@ public class ConsequenceParser extends InfoParser {
     }
 
     @Override
-    public List<Map<String, String>> parse(String infoString) throws Exception {
+    public List<Annotation> parse(String infoString) throws Exception {
         // Consequence type from Ensembl 78 as predicted by VEP. Format: Allele|Consequence|IMPACT|SYMBOL|Gene|Feature_type|Feature|BIOTYPE|EXON|INTRON|HGVSc|HGVSp|cDNA_position|CDS_position|Protein_position|Amino_acids|Codons|Existing_variation|DISTANCE|STRAND|FLAGS|SYMBOL_SOURCE|HGNC_ID|HGVSg|CLIN_SIG|SOMATIC|PHENO
         return super.parse(infoString);
     }
@@ -71,4 +70,24 @@ public class ConsequenceParser extends InfoParser {
         }
         return null;
     }
+
+    /**
+     * Returns the rs Id and the HGVSg of the first consequence of already parsed consequences
+     * @param consequences parsed Vep annotations
+     * @return a list of two values : 1rst is rsId and 2nd is hgvs, null if there are no consequences
+     */
+    public List<String> getRsIDAndHGVS(List<Annotation> consequences) {
+        if (consequences == null || consequences.isEmpty())
+            return null;
+        Annotation consequence = consequences.get(0);
+        List<String> result = new ArrayList<>();
+        result.add(consequence.get("Existing_variation"));
+        String hgvsg = consequence.get("HGVSg");
+        if (hgvsg.contains(":")) {
+            // we remove the suffix with "chr:" if any
+            hgvsg = hgvsg.split(":")[1];
+        }
+        result.add(hgvsg);
+        return result;
+    }
 }
@@ -24,16 +24,15 @@ class DPParser extends InfoParser {
     }
 
     @Override
-    public List<Map<String, String>> parse(String infoString) {
+    public List<Annotation> parse(String infoString) {
         // split by " 'id'= "
-        infos = infoString.split(getInfoId() + "=");
-        Map<String, String> dpMap = new HashMap<>();
+        String[] infos = infoString.split(getInfoId() + "=");
+        String val = null;
         if (infos.length > 1) {
-            String val = infos[1].split(";")[0];
-            dpMap.put(getAnnotationKeys().get(0), val);
+            val = infos[1].split(";")[0];
         }
-        List<Map<String, String>> result = new ArrayList<>();
-        result.add(dpMap);
+        List<Annotation> result = new ArrayList<>();
+        result.add(createAnnotation(val, ';'));
         return result;
     }
 
@@ -0,0 +1,152 @@
+package org.jax.mvar.utility.parser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extracts the GT values of the tab separated samples of a genotype block (genotype_temp.genotype_data) in one pass,
+ * without splitting the block.
+ *
+ * Each GT is given as a small integer code in a reusable array. The diploid GTs with single character alleles
+ * ("0/1", "1|1", "./." ...) have fixed codes from 1 to 242, computed from their characters; the other GTs
+ * (multi-digit alleles, haploid calls...) get codes from 256 assigned when first seen. The GT strings of the codes
+ * are built once, so that getGenotype does not allocate.
+ * A scanner is not thread safe: each thread needs its own.
+ */
+public class GenotypeScanner {
+
+    private static final int FIRST_OTHER_CODE = 256;
+    private static final String[] DIPLOID_GENOTYPES = new String[FIRST_OTHER_CODE];
+
+    /**
+     * Code of "0/0", homozygous reference
+     */
+    public static final int HOM_REF = diploidCode('0', '/', '0');
+
+    private final Map<String, Integer> otherCodes = new HashMap<>();
+    private final List<String> otherGenotypes = new ArrayList<>();
+    private int[] codes = new int[1024];
+
+    static {
+        String alleles = ".0123456789";
+        for (int i = 0; i < alleles.length(); i++) {
+            for (int j = 0; j < alleles.length(); j++) {
+                for (char sep : new char[]{'/', '|'}) {
+                    String gt = "" + alleles.charAt(i) + sep + alleles.charAt(j);
+                    DIPLOID_GENOTYPES[diploidCode(gt.charAt(0), gt.charAt(1), gt.charAt(2))] = gt;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return code of a diploid GT with single character alleles, -1 if the characters are not such a GT
+     */
+    private static int diploidCode(int first, int sep, int second) {
+        int a = alleleIndex(first), b = alleleIndex(second);
+        if (a == -1 || b == -1 || (sep != '/' && sep != '|'))
+            return -1;
+        return (a * 11 + b) * 2 + (sep == '|' ? 1 : 0) + 1;
+    }
+
+    private static int alleleIndex(int c) {
+        if (c == '.')
+            return 0;
+        if (c >= '0' && c <= '9')
+            return c - '0' + 1;
+        return -1;
+    }
+
+    /**
+     * Scan a genotype block read as bytes (ASCII)
+     *
+     * @param data tab separated samples, each sample starting with its GT (GT:AD:...)
+     * @return number of samples, their codes being the first values of getCodes()
+     */
+    public int scan(byte[] data) {
+        return scan(data, null, data.length);
+    }
+
+    /**
+     * Scan a genotype block
+     *
+     * @param data tab separated samples, each sample starting with its GT (GT:AD:...)
+     * @return number of samples, their codes being the first values of getCodes()
+     */
+    public int scan(CharSequence data) {
+        return scan(null, data, data.length());
+    }
+
+    private int scan(byte[] bytes, CharSequence chars, int length) {
+        if (length == 0)
+            return 0;
+        int count = 0;
+        // number of samples up to the last non empty one
+        int nonEmptyCount = 0;
+        int start = 0;
+        while (true) {
+            // GT of the sample: up to the first ':' (or the end of the sample)
+            int end = start;
+            int c = -1;
+            while (end < length && (c = charAt(bytes, chars, end)) != ':' && c != '\t')
+                end++;
+            if (count == codes.length) {
+                int[] larger = new int[codes.length * 2];
+                System.arraycopy(codes, 0, larger, 0, codes.length);
+                codes = larger;
+            }
+            codes[count++] = code(bytes, chars, start, end);
+            // skip the rest of the sample
+            if (end < length && c == ':') {
+                while (end < length && charAt(bytes, chars, end) != '\t')
+                    end++;
+            }
+            if (end > start)
+                nonEmptyCount = count;
+            start = end + 1;
+            // as with String.split, the empty samples at the end are dropped ("a\tb\t\t" has 2 samples)
+            if (start >= length)
+                return nonEmptyCount;
+        }
+    }
+
+    private static int charAt(byte[] bytes, CharSequence chars, int index) {
+        return bytes != null ? bytes[index] : chars.charAt(index);
+    }
+
+    private int code(byte[] bytes, CharSequence chars, int start, int end) {
+        if (end - start == 3) {
+            int code = diploidCode(charAt(bytes, chars, start), charAt(bytes, chars, start + 1), charAt(bytes, chars, start + 2));
+            if (code != -1)
+                return code;
+        }
+        // uncommon GT, only allocated here
+        String gt = bytes != null ? new String(bytes, start, end - start, StandardCharsets.US_ASCII)
+                : chars.subSequence(start, end).toString();
+        Integer code = otherCodes.get(gt);
+        if (code == null) {
+            code = FIRST_OTHER_CODE + otherGenotypes.size();
+            otherCodes.put(gt, code);
+            otherGenotypes.add(gt);
+        }
+        return code;
+    }
+
+    /**
+     * @return the GT codes of the last scan (the array is reused by the next scans)
+     */
+    public int[] getCodes() {
+        return codes;
+    }
+
+    /**
+     * @param code GT code
+     * @return the GT string of the code
+     */
+    public String getGenotype(int code) {
+        return code < FIRST_OTHER_CODE ? DIPLOID_GENOTYPES[code] : otherGenotypes.get(code - FIRST_OTHER_CODE);
+    }
+}
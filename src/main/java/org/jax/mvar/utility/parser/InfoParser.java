@@ -2,10 +2,9 @@ package org.jax.mvar.utility.parser;
 
 
 import org.eclipse.collections.impl.list.mutable.FastList;
-import org.eclipse.collections.impl.map.mutable.UnifiedMap;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
 
 import java.io.File;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,8 +22,8 @@ import java.util.Map;
 abstract public class InfoParser {
 
     String header;
-    String[] infos;
     List<String> annotationKeys;
+    ObjectIntHashMap<String> annotationKeyIndex;
 
     /**
      * Constructor
@@ -34,6 +33,7 @@ abstract public class InfoParser {
     public InfoParser(File headerFile) throws Exception {
         this.header = ParserUtils.getHeader(headerFile);
         this.annotationKeys = ParserUtils.getAnnotationKeys(getInfoId(), this.header);
+        this.annotationKeyIndex = ParserUtils.getAnnotationKeyIndex(getAnnotationKeys());
     }
 
     /**
@@ -47,43 +47,84 @@ abstract public class InfoParser {
      * @return
      */
     int getInfoLength() {
-        return this.annotationKeys.size();
+        return getAnnotationKeys().size();
     }
 
     /**
      * Returns the expected object for the given ID implementation parser.
-     * Can be overriden if necessary
+     * Can be overriden if necessary. Implementations must not keep any parsing state in the instance
+     * as one parser can be shared by several threads.
      * @param infoString string to be parsed
-     * @return list of maps
+     * @return list of annotations, null if the info string has no value for the id
      */
-    public List<Map<String, String>> parse(String infoString) throws Exception {
+    public List<Annotation> parse(String infoString) throws Exception {
         if (!infoString.contains(getInfoId())) {
             throw new IllegalArgumentException("This INFO string does not have the " + getInfoId() + " id.");
         }
-        // split by " 'id'= "
-        StringBuilder strSeparator = new StringBuilder(getInfoId());
-        strSeparator.append('=');
-        infos = infoString.split(strSeparator.toString());
-        if (infos.length > 1) {
-            // split string by commas: a comma in the jannovar string separates multiple transcripts
-            String[] functAnnotations = infos[1].split(";")[0].split(",");
-            List<Map<String, String>> listOfAnnMap = new FastList<>(functAnnotations.length);
-            for (int i = 0; i < functAnnotations.length; i++) {
-                String[] infoAnnArray = functAnnotations[i].split("\\|", -1);
-                if (infoAnnArray.length != getInfoLength()) {
-                    throw new IllegalArgumentException("Expecting " + getInfoId() + " identifier to have " + getInfoLength() + " blocks. Had " + infoAnnArray.length + " instead.");
-                }
-                Map<String, String> annMap = new UnifiedMap();
-                int index = 0;
-                for (String annotationKey:getAnnotationKeys()) {
-                    annMap.put(annotationKey, infoAnnArray[index]);
-                    index++;
+        // value following " 'id'= ", up to the next info entry
+        String separator = getInfoId() + "=";
+        int start = infoString.indexOf(separator);
+        if (start < 0 || start + separator.length() == infoString.length())
+            return null;
+        start += separator.length();
+        int end = infoString.indexOf(';', start);
+        if (end < 0)
+            end = infoString.length();
+        int nextId = infoString.indexOf(separator, start);
+        if (nextId >= 0 && nextId < end)
+            end = nextId;
+        // trailing commas do not start a new annotation
+        while (end > start && infoString.charAt(end - 1) == ',')
+            end--;
+
+        // a comma in the jannovar string separates multiple transcripts
+        List<Annotation> annotations = new FastList<>();
+        int infoLength = getInfoLength();
+        int annotationStart = start;
+        while (annotationStart <= end) {
+            int[] offsets = new int[infoLength + 1];
+            offsets[0] = annotationStart;
+            int fieldCount = 1;
+            int i = annotationStart;
+            for (; i < end && infoString.charAt(i) != ','; i++) {
+                if (infoString.charAt(i) == '|') {
+                    if (fieldCount < infoLength)
+                        offsets[fieldCount] = i + 1;
+                    fieldCount++;
                 }
-                listOfAnnMap.add(annMap);
             }
-            return listOfAnnMap;
+            if (fieldCount != infoLength) {
+                throw new IllegalArgumentException("Expecting " + getInfoId() + " identifier to have " + infoLength + " blocks. Had " + fieldCount + " instead.");
+            }
+            offsets[infoLength] = i + 1;
+            annotations.add(new Annotation(infoString, offsets, annotationKeyIndex));
+            annotationStart = i + 1;
         }
-        return null;
+        return annotations;
+    }
+
+    /**
+     * Creates an annotation from a string of values
+     * @param values values separated by the separator, null for an annotation without values
+     * @param separator value separator
+     * @return the annotation
+     */
+    Annotation createAnnotation(String values, char separator) {
+        if (values == null)
+            return new Annotation("", new int[]{0}, annotationKeyIndex);
+        int count = 1;
+        for (int i = 0; i < values.length(); i++) {
+            if (values.charAt(i) == separator)
+                count++;
+        }
+        int[] offsets = new int[count + 1];
+        int field = 1;
+        for (int i = 0; i < values.length(); i++) {
+            if (values.charAt(i) == separator)
+                offsets[field++] = i + 1;
+        }
+        offsets[count] = values.length() + 1;
+        return new Annotation(values, offsets, annotationKeyIndex);
     }
 
     /**
@@ -94,6 +135,14 @@ abstract public class InfoParser {
         return this.annotationKeys;
     }
 
+    /**
+     * @param key annotation key
+     * @return index of the key in the annotations, -1 if the annotations do not have this key
+     */
+    public int getAnnotationKeyIndex(String key) {
+        return annotationKeyIndex.getIfAbsent(key, -1);
+    }
+
     /**
      *
      * @param annotations
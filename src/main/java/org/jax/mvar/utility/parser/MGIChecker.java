@@ -1,94 +1,53 @@
 package org.jax.mvar.utility.parser;
 
 import org.apache.commons.lang3.time.StopWatch;
-import org.jax.mvar.utility.Config;
 import org.jax.mvar.utility.model.Variant;
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
-import java.io.IOException;
-import java.sql.*;
 import java.util.Date;
-import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class MGIChecker {
 
     /**
-     * Loads a VCF file in the database
+     * Search the variants of a VCF file in the database, batch by batch. The variants of each batch are looked up in
+     * chunks spread over several connections, and the duplicates found are written to mgi_duplicates.txt as they
+     * are found, so only one batch of variants is held in memory at a time.
      *
      * @param vcfFile     VCF file
+     * @param region      region of the file to check (the file needs to be bgzipped and indexed), the whole file if null
+     * @param threads     number of threads used to read (decompress/parse) the file
+     * @param batchSize   number of variants read and looked up at a time
+     * @param connections number of connections used for the lookups
      */
-    public void loadVCF(File vcfFile) {
-
-        // get Properties
-        Config config = new Config();
-        try (Connection connection = DriverManager.getConnection(config.getUrl(), config.getUser(), config.getPassword())) {
-            final StopWatch stopWatch = new StopWatch();
-            stopWatch.start();
-
-            // parse variants into a Map
-            Map<String, Variant> variations = VcfParser.parseVcf(vcfFile, vcfFile, false);
-            // query database for duplicates
-            Map<Integer, Variant> result = queryDatabase(connection, variations);
-            writeToFile(result);
-            System.out.println(variations.keySet().size() + " variants searched in the Database in " + stopWatch + ", " + new Date());
-            stopWatch.reset();
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.err.println("An exception was caught: " + e.getMessage());
-        }
-    }
-
-    private Map<Integer, Variant> queryDatabase(Connection connection, Map<String, Variant> variations) throws SQLException {
-
-        Map<Integer, Variant> foundVariants = new LinkedHashMap<>();
-        for (String key : variations.keySet()) {
-            Variant var = variations.get(key);
-            PreparedStatement selectCanonicalIdStmt = null;
-            String selectCanonical = "select id from variant_canon_identifier where variant_ref_txt=\"" + var.getVariantRefTxt() +"\";";
-            try {
-                selectCanonicalIdStmt = connection.prepareStatement(selectCanonical);
-                ResultSet idResult = selectCanonicalIdStmt.executeQuery();
-                if (idResult.next()) {
-                    int id = idResult.getInt("id");
-                    foundVariants.put(id, var);
-                }
-            } finally {
-                if (selectCanonicalIdStmt != null)
-                    selectCanonicalIdStmt.close();
-            }
-        }
-        return foundVariants;
-    }
-
-    private void writeToFile(Map<Integer, Variant> results) {
+    public void loadVCF(File vcfFile, Region region, int threads, int batchSize, int connections) {
         String currentPath = (new File(".")).getAbsolutePath();
         File file = new File(currentPath + "/mgi_duplicates.txt");
-        FileWriter fr = null;
-        BufferedWriter br = null;
-        try {
-            fr = new FileWriter(file);
-            br = new BufferedWriter(fr);
+        final StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        try (VariantSource source = VcfParser.openVcf(vcfFile, vcfFile, region, threads);
+             CanonicalChecker checker = CanonicalChecker.openCanonicalIdentifiers(connections);
+             BufferedWriter br = new BufferedWriter(new FileWriter(file))) {
             br.write("id\tvariant_ref_txt" + System.getProperty("line.separator"));
-            for (Integer key : results.keySet()) {
-                Variant var = results.get(key);
-                br.write(key + "\t" + var.getVariantRefTxt() + System.getProperty("line.separator"));
+            long found = 0;
+            Map<String, Variant> variations;
+            while (!(variations = source.nextBatch(batchSize)).isEmpty()) {
+                // query database for duplicates
+                found += checker.check(variations);
+                for (Variant var : variations.values()) {
+                    if (var.getExists())
+                        br.write(var.getExistingId() + "\t" + var.getVariantRefTxt() + System.getProperty("line.separator"));
+                }
+                br.flush();
+                System.out.println(source.getCount() + " variants searched, " + found + " duplicates found, " + new Date());
             }
-        } catch (IOException e) {
+            System.out.println("MGI duplicates written to file:" + file.getName());
+            System.out.println(source.getCount() + " variants searched in the Database in " + stopWatch + ", " + new Date());
+        } catch (Exception e) {
             e.printStackTrace();
-            System.err.println("Error writing MGI duplicates to file: " + e.getMessage());
-        } finally {
-            try {
-                if (br != null)
-                    br.close();
-                if (fr != null)
-                    fr.close();
-                System.out.println("MGI duplicates written to file:" + file.getName());
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            System.err.println("An exception was caught: " + e.getMessage());
         }
     }
 
@@ -0,0 +1,144 @@
+package org.jax.mvar.utility.parser;
+
+import org.jax.mvar.utility.model.Variant;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * VariantSource for uncompressed VCF files: the file is memory mapped in large chunks cut at newline boundaries,
+ * and the chunks are parsed in parallel. Variants are handed out in file order, chunk after chunk, so that the
+ * duplicate override semantics are the same as with a sequential reader.
+ */
+class MappedVcfSource extends VariantSource {
+
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private final String name;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int chunkSize;
+    private final ConsequenceParser infoParser;
+    private final ExecutorService executor;
+    private final int maxChunksInFlight;
+    private final Deque<Future<List<Variant>>> chunks = new ArrayDeque<>();
+
+    private long position = 0;
+    private Iterator<Variant> current = Collections.emptyIterator();
+
+    /**
+     * @param vcfFile    uncompressed vcf file
+     * @param infoParser CSQ parser
+     * @param threads    number of parsing threads
+     * @param chunkSize  size of the chunks, extended if a line is longer than the chunk
+     * @throws IOException
+     */
+    MappedVcfSource(File vcfFile, ConsequenceParser infoParser, int threads, int chunkSize) throws IOException {
+        this.name = vcfFile.getName();
+        this.file = new RandomAccessFile(vcfFile, "r");
+        this.channel = file.getChannel();
+        this.fileSize = channel.size();
+        this.chunkSize = chunkSize;
+        this.infoParser = infoParser;
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.maxChunksInFlight = threads * 2;
+    }
+
+    @Override
+    protected Variant readVariant() throws Exception {
+        while (!current.hasNext()) {
+            scheduleChunks();
+            Future<List<Variant>> chunk = chunks.poll();
+            if (chunk == null)
+                return null;
+            try {
+                current = chunk.get().iterator();
+            } catch (ExecutionException exc) {
+                throw exc.getCause() instanceof Exception ? (Exception) exc.getCause() : exc;
+            }
+        }
+        return current.next();
+    }
+
+    /**
+     * Map the next chunks of the file and submit them for parsing, keeping a bounded number of chunks in flight.
+     */
+    private void scheduleChunks() throws IOException {
+        while (chunks.size() < maxChunksInFlight && position < fileSize) {
+            MappedByteBuffer buffer = mapChunk();
+            position += buffer.limit();
+            chunks.add(executor.submit(() -> parseChunk(buffer)));
+        }
+    }
+
+    /**
+     * Map the chunk starting at the current position and ending after the last newline of the chunk
+     * (or at the end of the file).
+     */
+    private MappedByteBuffer mapChunk() throws IOException {
+        long size = chunkSize;
+        while (true) {
+            long length = Math.min(Math.min(size, fileSize - position), Integer.MAX_VALUE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            if (position + length == fileSize)
+                return buffer;
+            for (int i = (int) length - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    buffer.limit(i + 1);
+                    return buffer;
+                }
+            }
+            if (length == Integer.MAX_VALUE)
+                throw new IOException("Line longer than " + Integer.MAX_VALUE + " bytes in " + name);
+            // no newline in this chunk: the line is longer than the chunk
+            size *= 2;
+        }
+    }
+
+    private List<Variant> parseChunk(MappedByteBuffer buffer) throws Exception {
+        List<Variant> variants = new ArrayList<>();
+        VcfRecordTokenizer record = new VcfRecordTokenizer();
+        byte[] line = new byte[8192];
+        int length = 0;
+        int limit = buffer.limit();
+        for (int i = 0; i <= limit; i++) {
+            byte b = i < limit ? buffer.get(i) : (byte) '\n';
+            if (b == '\n') {
+                if (length > 0 && line[length - 1] == '\r')
+                    length--;
+                if (length > 0 && line[0] != '#') {
+                    record.tokenize(line, 0, length);
+                    variants.add(VcfParser.parseRecord(record, infoParser));
+                }
+                length = 0;
+            } else {
+                if (length == line.length)
+                    line = Arrays.copyOf(line, line.length * 2);
+                line[length++] = b;
+            }
+        }
+        return variants;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void close() throws IOException {
+        System.out.println(getCount() + " variants parsed from " + name);
+        for (Future<List<Variant>> chunk : chunks) {
+            chunk.cancel(true);
+        }
+        executor.shutdownNow();
+        channel.close();
+        file.close();
+    }
+}
@@ -1,18 +1,21 @@
 package org.jax.mvar.utility.parser;
 
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
 import org.jax.mvar.utility.Utils;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.*;
+import java.util.zip.GZIPInputStream;
 
 public class ParserUtils {
 
+    // maximum number of strain names per query
+    private static final int STRAIN_CHUNK_SIZE = 1000;
+
     /**
      * Retrieve all the corresponding Sample ids given a a sample file.
      * If the samples in the sample file are not present in the mvar_strain table, the corresponding
@@ -43,64 +46,63 @@ public class ParserUtils {
         }
         if (strains.size() == 0) throw new AssertionError("The strain file could not be properly read.");
 
-        // collect the list of all the strain ids given the list of strain names for the Sanger data
-        PreparedStatement strainIdStmt = null;
-        ResultSet resultStrainIds = null;
-        List<String> unfound = new ArrayList<>();
-        String strStrainIds = "";
-        for (int i = 0; i < strains.size(); i++) {
-            try {
-                strainIdStmt = connection.prepareStatement("SELECT id, name from strain where name=?");
-                strainIdStmt.setString(1, strains.get(i));
-                resultStrainIds = strainIdStmt.executeQuery();
-                if (resultStrainIds.next()) {
-                    int id = resultStrainIds.getInt("id");
-                    String name = resultStrainIds.getString("name");
-                    strainMap.put(id, name);
-                    strStrainIds = strStrainIds.equals("") ? String.valueOf(id) : strStrainIds + ":" + id;
-                } else {
-                    // not found
-                    unfound.add(strains.get(i));
+        // collect the list of all the strain ids given the list of strain names for the Sanger data:
+        // the names are looked up by chunks, the strains being then taken in the order of the file
+        Map<String, Object[]> strainsByName = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        List<String> distinctStrains = new ArrayList<>(new LinkedHashSet<>(strains));
+        for (int from = 0; from < distinctStrains.size(); from += STRAIN_CHUNK_SIZE) {
+            List<String> chunk = distinctStrains.subList(from, Math.min(from + STRAIN_CHUNK_SIZE, distinctStrains.size()));
+            StringBuilder query = new StringBuilder("SELECT id, name from strain where name in (");
+            for (int i = 0; i < chunk.size(); i++)
+                query.append(i == 0 ? "?" : ",?");
+            query.append(')');
+            try (PreparedStatement strainIdStmt = connection.prepareStatement(query.toString())) {
+                for (int i = 0; i < chunk.size(); i++)
+                    strainIdStmt.setString(i + 1, chunk.get(i));
+                try (ResultSet resultStrainIds = strainIdStmt.executeQuery()) {
+                    while (resultStrainIds.next()) {
+                        String name = resultStrainIds.getString("name");
+                        // first strain of a name, as the previous one by one queries
+                        if (!strainsByName.containsKey(name))
+                            strainsByName.put(name, new Object[]{resultStrainIds.getInt("id"), name});
+                    }
                 }
-            } catch (SQLException exc) {
-                throw exc;
-            } finally {
-                if (resultStrainIds != null)
-                    resultStrainIds.close();
-                if (strainIdStmt != null)
-                    strainIdStmt.close();
+            }
+        }
+        List<String> unfound = new ArrayList<>();
+        StringBuilder strStrainIds = new StringBuilder();
+        for (String strain : strains) {
+            Object[] found = strainsByName.get(strain);
+            if (found != null) {
+                int id = (int) found[0];
+                strainMap.put(id, (String) found[1]);
+                strStrainIds.append(strStrainIds.length() == 0 ? "" : ":").append(id);
+            } else {
+                // not found
+                unfound.add(strain);
             }
         }
         if (unfound.size() == 0) {
             System.out.println("All samples were found in the DB.");
         } else {
-            // search in synonyms
-            for (String strain : unfound) {
-                try {
-                    strainIdStmt = connection.prepareStatement("SELECT id, name, synonyms from strain where synonyms like ?");
-                    strainIdStmt.setString(1, "%" + strain + "%");
-                    resultStrainIds = strainIdStmt.executeQuery();
-                    while (resultStrainIds.next()) {
-                        int id = resultStrainIds.getInt("id");
-                        String name = resultStrainIds.getString("name");
-                        String synonyms = resultStrainIds.getString("synonyms");
-                        String[] synonymsArray = synonyms.split("\\|");
-                        for (String synonym : synonymsArray) {
-                            if (synonym.equals(strain)) {
-                                System.out.println("Strain id " + id + " with name " + name + " and synonym " + synonym +
-                                        " was found in the DB. Please make sure the strain name is the same in the strain file as the one in the DB.");
-                            }
+            // search in synonyms, in one pass over the strains having synonyms
+            Set<String> unfoundSet = new HashSet<>(unfound);
+            try (PreparedStatement strainIdStmt = connection.prepareStatement("SELECT id, name, synonyms from strain where synonyms is not null and synonyms <> ''");
+                 ResultSet resultStrainIds = strainIdStmt.executeQuery()) {
+                while (resultStrainIds.next()) {
+                    int id = resultStrainIds.getInt("id");
+                    String name = resultStrainIds.getString("name");
+                    String synonyms = resultStrainIds.getString("synonyms");
+                    String[] synonymsArray = synonyms.split("\\|");
+                    for (String synonym : synonymsArray) {
+                        if (unfoundSet.contains(synonym)) {
+                            System.out.println("Strain id " + id + " with name " + name + " and synonym " + synonym +
+                                    " was found in the DB. Please make sure the strain name is the same in the strain file as the one in the DB.");
                         }
                     }
-                } catch (SQLException exc) {
-                    throw exc;
-                } finally {
-                    if (resultStrainIds != null)
-                        resultStrainIds.close();
-                    if (strainIdStmt != null)
-                        strainIdStmt.close();
                 }
             }
+            System.out.println("Strains not found: " + String.join(", ", unfound));
             // We stop the insertion as if there is a missing strain, the relationship insertion will fail.
             throw new IllegalStateException("Error finding the above strains. Make sure that all the strains in the strain file " +
                     "provided are present in the strain table and that the names are identical.");
@@ -112,12 +114,14 @@ public class ParserUtils {
     /**
      * Returns the header of the vcf file as a String
      *
-     * @param headerFile can be a header file or a vcf file with a header
+     * @param headerFile can be a header file or a vcf file with a header (vcf or gzipped)
      * @return
      */
     public static String getHeader(File headerFile) {
         String header = "";
-        try (BufferedReader in = new BufferedReader(new FileReader(headerFile))) {
+        try (BufferedReader in = headerFile.getName().endsWith(".gz") ?
+                new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(headerFile)), StandardCharsets.UTF_8)) :
+                new BufferedReader(new FileReader(headerFile))) {
             String line = in.readLine(); // read a line at a time
             int idx = 0;
             while (line != null && line.startsWith("##")) { // loop till you have no more lines
@@ -132,6 +136,25 @@ public class ParserUtils {
         return header;
     }
 
+    /**
+     * Returns the index of each annotation key, so that the values of an annotation can be looked up by key
+     * without building a map per annotation.
+     *
+     * @param annotationKeys annotation keys, see getAnnotationKeys
+     * @return key to index map
+     */
+    public static ObjectIntHashMap<String> getAnnotationKeyIndex(List<String> annotationKeys) {
+        ObjectIntHashMap<String> keyIndex = new ObjectIntHashMap<>();
+        int index = 0;
+        for (String key : annotationKeys) {
+            // the first occurrence wins, as with List.indexOf
+            if (!keyIndex.containsKey(key))
+                keyIndex.put(key, index);
+            index++;
+        }
+        return keyIndex;
+    }
+
     /**
      * Method that reads the VCF header and given an annotation id (ANN, CSQ, etc)
      * returns the found annotations keys that make up that id.
@@ -0,0 +1,73 @@
+package org.jax.mvar.utility.parser;
+
+/**
+ * Genomic region of a VCF file: a chromosome and an inclusive range of positions.
+ * A record belongs to the region if its POS is in the range.
+ */
+public class Region {
+
+    private final String chr;
+    private final int start;
+    private final int end;
+
+    /**
+     * @param chr   chromosome, with or without the "chr" prefix
+     * @param start first position (1 based)
+     * @param end   last position, inclusive
+     */
+    public Region(String chr, int start, int end) {
+        if (start > end)
+            throw new IllegalArgumentException("Invalid region, start " + start + " is after end " + end);
+        this.chr = normalizeChr(chr);
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Parse a region in the tabix/samtools format: "chr", "chr:start" or "chr:start-end"
+     * @param region region string, e.g. "1:3000000-4000000" or "chrX"
+     * @return the region
+     */
+    public static Region parse(String region) {
+        int colonIdx = region.lastIndexOf(':');
+        if (colonIdx < 0)
+            return new Region(region, 1, Integer.MAX_VALUE);
+        String chr = region.substring(0, colonIdx);
+        String range = region.substring(colonIdx + 1).replace(",", "");
+        try {
+            int dashIdx = range.indexOf('-');
+            if (dashIdx < 0)
+                return new Region(chr, Integer.parseInt(range), Integer.MAX_VALUE);
+            int start = Integer.parseInt(range.substring(0, dashIdx));
+            int end = dashIdx == range.length() - 1 ? Integer.MAX_VALUE : Integer.parseInt(range.substring(dashIdx + 1));
+            return new Region(chr, start, end);
+        } catch (NumberFormatException exc) {
+            throw new IllegalArgumentException("Invalid region: " + region + ", expected chr:start-end");
+        }
+    }
+
+    /**
+     * @param chr chromosome name as found in a VCF file
+     * @return the chromosome name without the "chr" prefix
+     */
+    public static String normalizeChr(String chr) {
+        return chr.startsWith("chr") ? chr.substring(3) : chr;
+    }
+
+    public String getChr() {
+        return chr;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    @Override
+    public String toString() {
+        return end == Integer.MAX_VALUE ? chr + ":" + start + "-" : chr + ":" + start + "-" + end;
+    }
+}
@@ -0,0 +1,84 @@
+package org.jax.mvar.utility.parser;
+
+import org.jax.mvar.utility.model.Variant;
+
+import java.io.Closeable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Forward-only, closeable source of parsed variants.
+ *
+ * Variants are handed out one record at a time (or one batch at a time) so that a caller never needs to hold
+ * more than a batch of the file in memory.
+ */
+public abstract class VariantSource implements Closeable {
+
+    private Variant pending;
+    private int count;
+
+    /**
+     * Reads the next variant from the underlying data.
+     * @return the next variant or null if there are no more records
+     * @throws Exception
+     */
+    protected abstract Variant readVariant() throws Exception;
+
+    /**
+     * @return name of the source (file name) used for logging
+     */
+    public abstract String getName();
+
+    /**
+     * @return the next variant or null if the source is exhausted
+     * @throws Exception
+     */
+    public Variant next() throws Exception {
+        Variant var;
+        if (pending != null) {
+            var = pending;
+            pending = null;
+        } else {
+            var = readVariant();
+            if (var != null)
+                count++;
+        }
+        return var;
+    }
+
+    /**
+     * Returns the next batch of variants keyed by variant_ref_txt.
+     * A batch is only cut when the position changes so that duplicated records of a sorted VCF file
+     * still end up in the same batch and override each other, as they did when the whole file was loaded in one map.
+     *
+     * @param batchSize number of variants after which the batch can be cut
+     * @return LinkedHashMap of variations, empty if the source is exhausted
+     * @throws Exception
+     */
+    public Map<String, Variant> nextBatch(int batchSize) throws Exception {
+        Map<String, Variant> variations = new LinkedHashMap<>();
+        Variant var, last = null;
+        while ((var = next()) != null) {
+            if (variations.size() >= batchSize && !isSamePosition(last, var)) {
+                pending = var;
+                break;
+            }
+            if (variations.containsKey(var.getVariantRefTxt()))
+                System.out.println(var.getVariantRefTxt() + " already exists and will be overridden.");
+            variations.put(var.getVariantRefTxt(), var);
+            last = var;
+        }
+        return variations;
+    }
+
+    /**
+     * @return number of variant records read so far
+     */
+    public int getCount() {
+        return count;
+    }
+
+    private static boolean isSamePosition(Variant first, Variant second) {
+        return first != null && first.getPos().equals(second.getPos()) && first.getChr().equals(second.getChr());
+    }
+}
@@ -0,0 +1,243 @@
+package org.jax.mvar.utility.parser;
+
+import org.apache.commons.lang3.time.StopWatch;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Position index of a bgzipped (BGZF) and sorted VCF file, stored next to the file with the ".mvi" extension.
+ *
+ * For each chromosome, the index holds the position and the virtual offset of the first record starting in every
+ * BGZF block, which is enough to seek to the block where a region starts. The index also gives the amount of data
+ * (number of blocks) per chromosome, used to split a file into shards of similar size.
+ */
+public class VcfIndex {
+
+    public static final String EXTENSION = ".mvi";
+
+    // "MVI1"
+    private static final int MAGIC = 0x4d564931;
+
+    private final long fileLength;
+    private final Map<String, ChromosomeIndex> chromosomes = new LinkedHashMap<>();
+
+    private VcfIndex(long fileLength) {
+        this.fileLength = fileLength;
+    }
+
+    /**
+     * @param vcfFile bgzipped vcf file
+     * @return the index file of the vcf file
+     */
+    public static File getIndexFile(File vcfFile) {
+        return new File(vcfFile.getPath() + EXTENSION);
+    }
+
+    /**
+     * Reads the whole file and builds its index
+     * @param vcfFile bgzipped and sorted vcf file
+     * @param threads number of decompression threads
+     * @return the index
+     * @throws Exception if the file is not bgzipped or not sorted
+     */
+    public static VcfIndex build(File vcfFile, int threads) throws Exception {
+        if (!BgzfInputStream.isBgzf(vcfFile))
+            throw new Exception(vcfFile.getName() + " is not bgzipped and cannot be indexed, please compress it with bgzip.");
+        final StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        VcfIndex index = new VcfIndex(vcfFile.length());
+        int records = 0;
+        try (BgzfInputStream is = new BgzfInputStream(new FileInputStream(vcfFile), threads)) {
+            StringBuilder chr = new StringBuilder();
+            ChromosomeIndex chrIndex = null;
+            long lastBlock = -1;
+            int lastPos = 0;
+            while (true) {
+                long offset = is.getVirtualOffset();
+                int b = is.read();
+                if (b == -1)
+                    break;
+                if (b == '#' || b == '\n') {
+                    skipLine(is, b);
+                    continue;
+                }
+                // CHROM
+                chr.setLength(0);
+                while (b != '\t') {
+                    if (b == -1 || b == '\n')
+                        throw new Exception("Invalid record at offset " + offset + " in " + vcfFile.getName());
+                    chr.append((char) b);
+                    b = is.read();
+                }
+                // POS
+                int pos = 0;
+                while ((b = is.read()) >= '0' && b <= '9')
+                    pos = pos * 10 + (b - '0');
+                skipLine(is, b);
+
+                if (chrIndex == null || !chrIndex.name.contentEquals(chr)) {
+                    String name = chr.toString();
+                    if (index.chromosomes.containsKey(Region.normalizeChr(name)))
+                        throw new Exception(vcfFile.getName() + " is not sorted: records of chromosome " + name + " are not contiguous.");
+                    chrIndex = new ChromosomeIndex(name);
+                    index.chromosomes.put(Region.normalizeChr(name), chrIndex);
+                    chrIndex.add(pos, offset);
+                    lastBlock = offset >>> 16;
+                } else {
+                    if (pos < lastPos)
+                        throw new Exception(vcfFile.getName() + " is not sorted: position " + pos + " found after " + lastPos + " on chromosome " + chr);
+                    if (offset >>> 16 != lastBlock) {
+                        // first record starting in this block
+                        chrIndex.add(pos, offset);
+                        lastBlock = offset >>> 16;
+                    }
+                }
+                lastPos = pos;
+                records++;
+            }
+        }
+        System.out.println(records + " records of " + index.chromosomes.size() + " chromosome(s) indexed in " + stopWatch + ", " + new Date());
+        return index;
+    }
+
+    private static void skipLine(InputStream is, int b) throws IOException {
+        while (b != '\n' && b != -1)
+            b = is.read();
+    }
+
+    /**
+     * Loads the index of a vcf file
+     * @param vcfFile bgzipped vcf file
+     * @return the index
+     * @throws Exception if there is no index or if it is older than the file
+     */
+    public static VcfIndex load(File vcfFile) throws Exception {
+        File indexFile = getIndexFile(vcfFile);
+        if (!indexFile.exists())
+            throw new Exception("No index found for " + vcfFile.getName() + ", please run the INDEX command first.");
+        VcfIndex index;
+        try (DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (is.readInt() != MAGIC)
+                throw new Exception(indexFile.getName() + " is not a valid index file.");
+            index = new VcfIndex(is.readLong());
+            int chrCount = is.readInt();
+            for (int i = 0; i < chrCount; i++) {
+                ChromosomeIndex chrIndex = new ChromosomeIndex(is.readUTF());
+                int size = is.readInt();
+                for (int j = 0; j < size; j++) {
+                    chrIndex.add(is.readInt(), is.readLong());
+                }
+                index.chromosomes.put(Region.normalizeChr(chrIndex.name), chrIndex);
+            }
+        }
+        if (index.fileLength != vcfFile.length())
+            throw new Exception("The index of " + vcfFile.getName() + " is out of date, please run the INDEX command again.");
+        return index;
+    }
+
+    /**
+     * Writes the index next to the vcf file
+     * @param vcfFile bgzipped vcf file
+     * @return the index file
+     * @throws IOException
+     */
+    public File write(File vcfFile) throws IOException {
+        File indexFile = getIndexFile(vcfFile);
+        try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            os.writeInt(MAGIC);
+            os.writeLong(fileLength);
+            os.writeInt(chromosomes.size());
+            for (ChromosomeIndex chrIndex : chromosomes.values()) {
+                os.writeUTF(chrIndex.name);
+                os.writeInt(chrIndex.size);
+                for (int i = 0; i < chrIndex.size; i++) {
+                    os.writeInt(chrIndex.positions[i]);
+                    os.writeLong(chrIndex.offsets[i]);
+                }
+            }
+        }
+        return indexFile;
+    }
+
+    /**
+     * @param region region to read
+     * @return the virtual offset from which the records of the region can be read, -1 if the chromosome
+     * is not in the file
+     */
+    public long getStartOffset(Region region) {
+        ChromosomeIndex chrIndex = chromosomes.get(region.getChr());
+        if (chrIndex == null)
+            return -1;
+        // records at the start position can be in the block before the first entry at or after the start
+        int idx = Arrays.binarySearch(chrIndex.positions, 0, chrIndex.size, region.getStart());
+        if (idx < 0)
+            idx = -idx - 1;
+        else
+            while (idx > 0 && chrIndex.positions[idx - 1] == region.getStart())
+                idx--;
+        return chrIndex.offsets[Math.max(idx - 1, 0)];
+    }
+
+    /**
+     * Split the file into regions holding a similar amount of data. A region never spans two chromosomes,
+     * so that there can be more regions than requested.
+     * All the records at a given position end up in the same region.
+     *
+     * @param shardCount number of shards requested
+     * @return list of regions covering the whole file
+     */
+    public List<Region> getShards(int shardCount) {
+        int totalBlocks = 0;
+        for (ChromosomeIndex chrIndex : chromosomes.values()) {
+            totalBlocks += chrIndex.size;
+        }
+        int blocksPerShard = Math.max(1, (totalBlocks + shardCount - 1) / shardCount);
+        List<Region> shards = new ArrayList<>();
+        for (ChromosomeIndex chrIndex : chromosomes.values()) {
+            int start = 1;
+            int blocks = 0;
+            for (int i = 0; i < chrIndex.size; i++) {
+                if (blocks >= blocksPerShard && chrIndex.positions[i] > start) {
+                    shards.add(new Region(chrIndex.name, start, chrIndex.positions[i] - 1));
+                    start = chrIndex.positions[i];
+                    blocks = 0;
+                }
+                blocks++;
+            }
+            shards.add(new Region(chrIndex.name, start, Integer.MAX_VALUE));
+        }
+        return shards;
+    }
+
+    /**
+     * @return the chromosome names (without "chr" prefix) in file order
+     */
+    public Set<String> getChromosomes() {
+        return chromosomes.keySet();
+    }
+
+    /**
+     * Positions and virtual offsets of the first record of every block of a chromosome
+     */
+    private static class ChromosomeIndex {
+        private final String name;
+        private int[] positions = new int[16];
+        private long[] offsets = new long[16];
+        private int size = 0;
+
+        ChromosomeIndex(String name) {
+            this.name = name;
+        }
+
+        void add(int position, long offset) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            positions[size] = position;
+            offsets[size] = offset;
+            size++;
+        }
+    }
+}
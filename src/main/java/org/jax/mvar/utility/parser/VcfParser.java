@@ -1,11 +1,8 @@
 package org.jax.mvar.utility.parser;
 
-import org.jax.mvar.utility.Config;
 import org.jax.mvar.utility.model.Variant;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.sql.*;
 import java.util.*;
 import java.util.zip.GZIPInputStream;
 
@@ -27,127 +24,196 @@ public class VcfParser {
      * @return
      */
     public static Map<String, Variant> parseVcf(File vcfFile, File headerFile, boolean checkForCanon) throws Exception {
+        return parseVcf(vcfFile, headerFile, checkForCanon, null, 1);
+    }
+
+    /**
+     * Parse a VCF file or a region of it, reading it with the given number of threads (see openVcf).
+     * @param vcfFile
+     * @param headerFile
+     * @param checkForCanon
+     * @param region region to parse, the whole file if null
+     * @param threads number of threads used to read the file
+     * @return
+     */
+    public static Map<String, Variant> parseVcf(File vcfFile, File headerFile, boolean checkForCanon, Region region, int threads) throws Exception {
         Map<String, Variant> variations;
 
-        if (vcfFile.getName().endsWith(".vcf")) {
-            // read file line by line of unzipped file
-            try(InputStream is = new FileInputStream(vcfFile.getPath());
-                // create new input stream reader
-                InputStreamReader instrm = new InputStreamReader(is);
-                // Create the object of BufferedReader object
-                BufferedReader br = new BufferedReader(instrm)
-            ) {
-                InfoParser infoParser = new ConsequenceParser(headerFile);
-                variations = parse(vcfFile.getName(), br, infoParser, checkForCanon);
-            }
-        } else {
-            // gzipped read line by line
-            try(InputStream is = new FileInputStream(vcfFile.getPath());
-                InputStream gzipStream = new GZIPInputStream(is);
-                Reader decoder = new InputStreamReader(gzipStream, StandardCharsets.UTF_8);
-                BufferedReader br = new BufferedReader(decoder)
-            ) {
-                InfoParser vepParser = new ConsequenceParser(headerFile);
-                variations = parse(vcfFile.getName(), br, vepParser,checkForCanon);
+        try (VariantSource source = openVcf(vcfFile, headerFile, region, threads)) {
+            variations = source.nextBatch(Integer.MAX_VALUE);
+        }
+        if (checkForCanon) {
+            try (CanonicalChecker checker = CanonicalChecker.open(1, false)) {
+                checker.check(variations);
             }
         }
-
         return variations;
     }
 
-    private static Map<String, Variant> parse(String filename, BufferedReader br, InfoParser infoParser, boolean checkForCanon) throws Exception {
-        Map<String, Variant> variations = new LinkedHashMap<>();
-
-        String next, strLine = br.readLine();
-        int idx = 0;
-        // load data in to map
-        for (boolean last = (strLine == null); !last; strLine = next) {
-            last = ((next = br.readLine()) == null);
-            if (!strLine.startsWith("#")) {
-                String[] columns = strLine.split("\t");
-
-                // jannovar transcript annotation and VEP annotation
-                Map<String, String> jannotationAndCSQ = InfoParser.getANNandCSQ(columns[7].split(";"));
-                // VEP hgvs annotation
-                List<String> rsIdAndHgvs = ((ConsequenceParser)infoParser).getRsIDAndHGVS(jannotationAndCSQ.get("CSQ"));
-                List<Map<String, String>> csqAnnotations = infoParser.parse(jannotationAndCSQ.get("CSQ"));
-                String rsId;
-                // rsId
-                if (columns[2].isEmpty() || columns[2].equals(".")) {
-                    rsId = rsIdAndHgvs != null ? rsIdAndHgvs.get(0) : columns[2];
-                } else {
-                    rsId = columns[2];
-                }
-                Variant var;
-                if (columns.length > 7) {
-                    String[] genotypes = Arrays.copyOfRange(columns, 9, columns.length);
-                    String genotypeData = String.join("\t", genotypes);
-                    var = new Variant(columns[0], columns[1], rsId, columns[3],
-                            columns[4], columns[5], columns[6], columns[8], rsIdAndHgvs.get(1), csqAnnotations.get(0).get("Protein_position"), csqAnnotations.get(0).get("Amino_acids"), jannotationAndCSQ.get("ANN"), genotypeData);
-                } else {
-                    var = new Variant(columns[0], columns[1], rsId, columns[3],
-                            columns[4], columns[5], columns[6], "", rsIdAndHgvs.get(1), csqAnnotations.get(0).get("Protein_position"), csqAnnotations.get(0).get("Amino_acids"), jannotationAndCSQ.get("ANN"), null);
-                }
-                if (variations.containsKey(var.getVariantRefTxt()))
-                    System.out.println(var.getVariantRefTxt() + " already exists and will be overridden.");
-                variations.put(var.getVariantRefTxt(), var);
-                idx++;
+    /**
+     * Opens a VCF file (vcf or gzipped) as a stream of variants. Nothing is parsed until the source is read,
+     * and only the current record is held in memory.
+     *
+     * @param vcfFile
+     * @param headerFile If one input file, headerFile can be the same as the vcfFile.
+     * @return a VariantSource that needs to be closed by the caller
+     * @throws Exception
+     */
+    public static VariantSource openVcf(File vcfFile, File headerFile) throws Exception {
+        return openVcf(vcfFile, headerFile, 1);
+    }
+
+    /**
+     * Opens a VCF file (vcf or gzipped) as a stream of variants.
+     * If more than one thread is given, uncompressed vcf files are memory mapped and parsed by chunks in parallel,
+     * and bgzipped files are decompressed block by block in parallel (plain gzip files are still read by a single
+     * GZIPInputStream). The variants are returned in file order in all cases.
+     *
+     * @param vcfFile
+     * @param headerFile If one input file, headerFile can be the same as the vcfFile.
+     * @param threads number of threads used to read the file
+     * @return a VariantSource that needs to be closed by the caller
+     * @throws Exception
+     */
+    public static VariantSource openVcf(File vcfFile, File headerFile, int threads) throws Exception {
+        ConsequenceParser infoParser = new ConsequenceParser(headerFile);
+        if (threads > 1 && vcfFile.getName().endsWith(".vcf"))
+            return new MappedVcfSource(vcfFile, infoParser, threads, MappedVcfSource.DEFAULT_CHUNK_SIZE);
+        InputStream is = new FileInputStream(vcfFile.getPath());
+        try {
+            InputStream decompressed;
+            if (vcfFile.getName().endsWith(".vcf")) {
+                // read file line by line of unzipped file
+                decompressed = is;
+            } else if (threads > 1 && BgzfInputStream.isBgzf(vcfFile)) {
+                // bgzipped: blocks inflated in parallel and read line by line
+                decompressed = new BgzfInputStream(is, threads);
+            } else {
+                // gzipped read line by line
+                decompressed = new GZIPInputStream(is, 1 << 16);
             }
+            return new LineVariantSource(vcfFile.getName(), new ByteLineReader(decompressed), infoParser, null);
+        } catch (IOException exc) {
+            is.close();
+            throw exc;
         }
-        System.out.println(idx + " variants parsed from " + filename);
+    }
 
-        if (checkForCanon) {
-            System.out.println("Looking for Canonicals...");
-            PreparedStatement selectStmt = null;
-            ResultSet result = null;
-            Config config = new Config();
-
-            String variantQuery = "select id, variant_ref_txt from variant where variant_ref_txt in(";
-            StringBuilder sql = new StringBuilder();
-            sql.append(variantQuery);
-            for (int i = 0; i < variations.size(); i++) {
-                sql.append("?");
-                if(i+1 < variations.size()){
-                    sql.append(",");
-                }
-            }
-            sql.append(")");
+    /**
+     * Opens a region of a bgzipped and indexed VCF file (see VcfIndex) as a stream of variants.
+     * Decompression starts at the block where the region starts and stops after the end of the region.
+     *
+     * @param vcfFile bgzipped vcf file
+     * @param headerFile header file, needed as the header of the vcf file is not read
+     * @param region region to read, the whole file if null
+     * @param threads number of threads used to read the file
+     * @return a VariantSource that needs to be closed by the caller
+     * @throws Exception if the file is not bgzipped or has no index
+     */
+    public static VariantSource openVcf(File vcfFile, File headerFile, Region region, int threads) throws Exception {
+        if (region == null)
+            return openVcf(vcfFile, headerFile, threads);
+        if (!BgzfInputStream.isBgzf(vcfFile))
+            throw new Exception("Regions can only be read from bgzipped and indexed files, " + vcfFile.getName() + " is not bgzipped.");
+        ConsequenceParser infoParser = new ConsequenceParser(headerFile);
+        String name = vcfFile.getName() + " (" + region + ")";
+        long offset = VcfIndex.load(vcfFile).getStartOffset(region);
+        if (offset < 0) {
+            System.out.println("Chromosome " + region.getChr() + " not found in " + vcfFile.getName());
+            return new LineVariantSource(name, new ByteLineReader(new ByteArrayInputStream(new byte[0])), infoParser, region);
+        }
+        return new LineVariantSource(name, new ByteLineReader(BgzfInputStream.open(vcfFile, offset, threads)), infoParser, region);
+    }
+
+    /**
+     * Parse one tokenized VCF data line into a Variant. Only the fields stored in the Variant are copied,
+     * the sample columns being copied as one genotype block.
+     * @param record tokenized vcf line (not a header line)
+     * @param infoParser CSQ parser
+     * @return
+     * @throws Exception
+     */
+    static Variant parseRecord(VcfRecordTokenizer record, ConsequenceParser infoParser) throws Exception {
+        // jannovar transcript annotation and VEP annotation
+        String jannotation = record.getInfoEntry("ANN");
+        String consequence = record.getInfoEntry("CSQ");
+        List<Annotation> csqAnnotations = infoParser.parse(consequence);
+        // VEP hgvs annotation
+        List<String> rsIdAndHgvs = infoParser.getRsIDAndHGVS(csqAnnotations);
+        String rsId;
+        // rsId
+        if (record.isMissing(VcfRecordTokenizer.ID)) {
+            rsId = rsIdAndHgvs != null ? rsIdAndHgvs.get(0) : record.getString(VcfRecordTokenizer.ID);
+        } else {
+            rsId = record.getString(VcfRecordTokenizer.ID);
+        }
+        String format = "";
+        String genotypeData = null;
+        if (record.getFieldCount() > VcfRecordTokenizer.FORMAT) {
+            format = record.getString(VcfRecordTokenizer.FORMAT);
+            genotypeData = record.getFieldCount() > VcfRecordTokenizer.SAMPLES ? record.getString(VcfRecordTokenizer.SAMPLES) : "";
+        }
+        return new Variant(record.getString(VcfRecordTokenizer.CHROM), record.getString(VcfRecordTokenizer.POS), rsId,
+                record.getString(VcfRecordTokenizer.REF), record.getString(VcfRecordTokenizer.ALT), record.getString(VcfRecordTokenizer.QUAL),
+                record.getString(VcfRecordTokenizer.FILTER), format, rsIdAndHgvs.get(1), csqAnnotations.get(0).get("Protein_position"),
+                csqAnnotations.get(0).get("Amino_acids"), jannotation, genotypeData);
+    }
 
-            try (Connection connection = DriverManager.getConnection(config.getUrl(), config.getUser(), config.getPassword())) {
-                int index = 0;
-                selectStmt = connection.prepareStatement(sql.toString());
+    /**
+     * VariantSource reading a VCF file line by line, optionally restricted to a region
+     */
+    private static class LineVariantSource extends VariantSource {
+
+        private final String name;
+        private final ByteLineReader reader;
+        private final ConsequenceParser infoParser;
+        private final Region region;
+        private final VcfRecordTokenizer record = new VcfRecordTokenizer();
+        private boolean inRegionChr = false;
+
+        LineVariantSource(String name, ByteLineReader reader, ConsequenceParser infoParser, Region region) {
+            this.name = name;
+            this.reader = reader;
+            this.infoParser = infoParser;
+            this.region = region;
+        }
 
-                for (Map.Entry<String, Variant> entry : variations.entrySet()) {
-                    String key = entry.getKey();
-                    Variant variant = entry.getValue();
-                    selectStmt.setString(index+1, variant.getVariantRefTxt());
-                    index++;
+        @Override
+        protected Variant readVariant() throws Exception {
+            while (reader.readLine()) {
+                if (reader.getLineLength() == 0)
+                    continue;
+                record.tokenize(reader.getBuffer(), reader.getLineStart(), reader.getLineLength());
+                if (record.isHeader())
+                    continue;
+                if (region == null)
+                    return parseRecord(record, infoParser);
+                // only the chromosome and position are read to filter the records
+                if (!record.isChromosome(region.getChr())) {
+                    // the file being sorted, the region is over once its chromosome has been read
+                    if (inRegionChr)
+                        return null;
+                    continue;
                 }
-                result = selectStmt.executeQuery();
-
-                int myIdx = 0;
-                while (result.next()) {
-                    int variantId = result.getInt("id");
-                    String variantRefTxt = result.getString("variant_ref_txt");
-
-                    Variant var = variations.get(variantRefTxt);
-                    if (var != null) {
-                        var.setExists(true);
-                        var.setExistingId(variantId);
-                        myIdx++;
-                    }
-                }
-                System.out.println(myIdx + " canonical variants were found.");
-
-            } catch (SQLException exc) {
-                throw exc;
-            } finally {
-                if (result != null)
-                    result.close();
-                if (selectStmt != null)
-                    selectStmt.close();
+                inRegionChr = true;
+                int pos = record.getInt(VcfRecordTokenizer.POS);
+                if (pos > region.getEnd())
+                    return null;
+                if (pos >= region.getStart())
+                    return parseRecord(record, infoParser);
             }
+            return null;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void close() throws IOException {
+            System.out.println(getCount() + " variants parsed from " + name);
+            reader.close();
         }
-        return variations;
     }
 }
@@ -0,0 +1,163 @@
+package org.jax.mvar.utility.parser;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable tokenizer of a VCF data line held in a byte buffer.
+ *
+ * The fields are only located (start and end offsets in the buffer), nothing is copied until a field is requested
+ * as a String. The sample columns are kept as a single field (SAMPLES) so that the genotype block can be stored
+ * with one copy, whatever the number of strains.
+ * Not thread safe: each reading thread needs its own instance.
+ */
+class VcfRecordTokenizer {
+
+    static final int CHROM = 0;
+    static final int POS = 1;
+    static final int ID = 2;
+    static final int REF = 3;
+    static final int ALT = 4;
+    static final int QUAL = 5;
+    static final int FILTER = 6;
+    static final int INFO = 7;
+    static final int FORMAT = 8;
+    // all the sample columns, tab separated
+    static final int SAMPLES = 9;
+
+    private static final int MAX_FIELDS = SAMPLES + 1;
+
+    private final int[] starts = new int[MAX_FIELDS];
+    private final int[] ends = new int[MAX_FIELDS];
+    private byte[] buffer;
+    private int fieldCount;
+
+    /**
+     * Locate the fields of a line
+     * @param buffer buffer holding the line
+     * @param offset start of the line in the buffer
+     * @param length length of the line, without the line terminator
+     */
+    void tokenize(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        fieldCount = 0;
+        int start = offset;
+        int end = offset + length;
+        for (int i = offset; i < end && fieldCount < SAMPLES; i++) {
+            if (buffer[i] == '\t') {
+                starts[fieldCount] = start;
+                ends[fieldCount] = i;
+                fieldCount++;
+                start = i + 1;
+            }
+        }
+        // last field: the rest of the line
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        fieldCount++;
+    }
+
+    /**
+     * @return the number of fields, the sample columns counting as one field
+     */
+    int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @return true if the line is a header line
+     */
+    boolean isHeader() {
+        return ends[0] > starts[0] && buffer[starts[0]] == '#';
+    }
+
+    /**
+     * @param field field index
+     * @return a copy of the field as a String
+     */
+    String getString(int field) {
+        checkField(field);
+        return new String(buffer, starts[field], ends[field] - starts[field], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param field field index
+     * @return true if the field is empty or is the missing value "."
+     */
+    boolean isMissing(int field) {
+        checkField(field);
+        int length = ends[field] - starts[field];
+        return length == 0 || (length == 1 && buffer[starts[field]] == '.');
+    }
+
+    /**
+     * @param field field index of a numeric field (POS)
+     * @return the field value as an int
+     */
+    int getInt(int field) {
+        checkField(field);
+        int value = 0;
+        for (int i = starts[field]; i < ends[field]; i++) {
+            byte b = buffer[i];
+            if (b < '0' || b > '9')
+                throw new NumberFormatException("Invalid number in field " + field + ": " + getString(field));
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    /**
+     * @param chr chromosome without the "chr" prefix
+     * @return true if the CHROM field is this chromosome, with or without the "chr" prefix
+     */
+    boolean isChromosome(String chr) {
+        int start = starts[CHROM];
+        int length = ends[CHROM] - start;
+        if (length >= 3 && buffer[start] == 'c' && buffer[start + 1] == 'h' && buffer[start + 2] == 'r') {
+            start += 3;
+            length -= 3;
+        }
+        if (length != chr.length())
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (buffer[start + i] != chr.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Look up an INFO entry by key, without splitting the INFO field
+     * @param key INFO key, e.g. "ANN" or "CSQ"
+     * @return the whole entry ("key=value") or null if the key is not in the INFO field
+     */
+    String getInfoEntry(String key) {
+        checkField(INFO);
+        int end = ends[INFO];
+        int entryStart = starts[INFO];
+        while (entryStart < end) {
+            int entryEnd = entryStart;
+            while (entryEnd < end && buffer[entryEnd] != ';')
+                entryEnd++;
+            if (isKey(entryStart, entryEnd, key))
+                return new String(buffer, entryStart, entryEnd - entryStart, StandardCharsets.UTF_8);
+            entryStart = entryEnd + 1;
+        }
+        return null;
+    }
+
+    private boolean isKey(int entryStart, int entryEnd, String key) {
+        int keyLength = key.length();
+        if (entryEnd - entryStart < keyLength)
+            return false;
+        for (int i = 0; i < keyLength; i++) {
+            if (buffer[entryStart + i] != key.charAt(i))
+                return false;
+        }
+        return entryEnd - entryStart == keyLength || buffer[entryStart + keyLength] == '=';
+    }
+
+    private void checkField(int field) {
+        if (field >= fieldCount)
+            throw new IllegalArgumentException("The VCF record has " + fieldCount + " fields, field " + field + " is missing.");
+    }
+}
@@ -0,0 +1,21 @@
+-- Tables of the packed variant/strain genotypes (GENO -packed), to be created before the first packed run.
+-- One row per variant and imputed value, the genotypes of the strains being packed in 2 bits per strain
+-- (see org.jax.mvar.utility.model.PackedGenotypes): 4096 bytes hold at most 16384 strains.
+
+CREATE TABLE variant_strain_packed (
+    variant_id INT NOT NULL,
+    imputed TINYINT NOT NULL,
+    strain_count SMALLINT UNSIGNED NOT NULL,
+    genotypes VARBINARY(4096) NOT NULL,
+    other_genotypes TEXT NULL,
+    absent_strains VARBINARY(2048) NULL,
+    PRIMARY KEY (variant_id, imputed)
+);
+
+-- strain of each position of the packed genotypes, by imputed value
+CREATE TABLE variant_strain_packed_strain (
+    imputed TINYINT NOT NULL,
+    position SMALLINT UNSIGNED NOT NULL,
+    strain_id INT NOT NULL,
+    PRIMARY KEY (imputed, position)
+);
@@ -0,0 +1,155 @@
+package org.jax.mvar.utility;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ConnectionPoolTest {
+
+    /**
+     * Fake connection recording the calls made on it
+     */
+    private static class FakeConnection {
+        private boolean autoCommit = true;
+        private boolean closed = false;
+        private int rollbackCount = 0;
+        private boolean failReset = false;
+        private final List<String> executed = new ArrayList<>();
+
+        private Statement statement() {
+            return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{Statement.class},
+                    (proxy, method, args) -> {
+                        if (method.getName().equals("execute")) {
+                            if (failReset)
+                                throw new SQLException("Connection lost");
+                            executed.add((String) args[0]);
+                            return false;
+                        }
+                        return null;
+                    });
+        }
+
+        private Connection proxy() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "getAutoCommit":
+                                return autoCommit;
+                            case "setAutoCommit":
+                                autoCommit = (boolean) args[0];
+                                return null;
+                            case "rollback":
+                                rollbackCount++;
+                                return null;
+                            case "isClosed":
+                                return closed;
+                            case "isValid":
+                                return !closed;
+                            case "close":
+                                closed = true;
+                                return null;
+                            case "createStatement":
+                                return statement();
+                            default:
+                                return null;
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Test that the connections given back are reused and reset to autocommit
+     */
+    @Test
+    public void testReuse() throws Exception {
+        final List<FakeConnection> created = new ArrayList<>();
+        try (ConnectionPool pool = new ConnectionPool(2, 1000, () -> {
+            FakeConnection connection = new FakeConnection();
+            created.add(connection);
+            return connection.proxy();
+        })) {
+            try (Connection connection = pool.getConnection()) {
+                connection.setAutoCommit(false);
+            }
+            Assert.assertEquals(1, created.size());
+            Assert.assertEquals(1, created.get(0).rollbackCount);
+            Assert.assertTrue(created.get(0).autoCommit);
+            Assert.assertFalse(created.get(0).closed);
+            Assert.assertEquals(1, pool.getIdleCount());
+
+            try (Connection first = pool.getConnection(); Connection second = pool.getConnection()) {
+                Assert.assertEquals(2, created.size());
+                Assert.assertFalse(first.isClosed());
+                first.close();
+                Assert.assertTrue(first.isClosed());
+                try {
+                    first.getAutoCommit();
+                    Assert.fail("A connection given back to the pool should not be usable.");
+                } catch (SQLException exc) {
+                    Assert.assertTrue(exc.getMessage().contains("given back"));
+                }
+            }
+            Assert.assertEquals(2, pool.getIdleCount());
+        }
+        Assert.assertTrue(created.get(0).closed);
+        Assert.assertTrue(created.get(1).closed);
+    }
+
+    /**
+     * Test that the session of a connection used to run statements is reset when given back, and that a connection
+     * that can't be reset is not reused
+     */
+    @Test
+    public void testSessionReset() throws Exception {
+        final List<FakeConnection> created = new ArrayList<>();
+        try (ConnectionPool pool = new ConnectionPool(1, 1000, () -> {
+            FakeConnection connection = new FakeConnection();
+            created.add(connection);
+            return connection.proxy();
+        })) {
+            // no statement, nothing to reset
+            pool.getConnection().close();
+            Assert.assertTrue(created.get(0).executed.isEmpty());
+
+            try (Connection connection = pool.getConnection()) {
+                connection.createStatement();
+            }
+            Assert.assertEquals(1, created.get(0).executed.size());
+            Assert.assertEquals(ConnectionPool.SESSION_RESET, created.get(0).executed.get(0));
+            Assert.assertEquals(1, pool.getIdleCount());
+
+            created.get(0).failReset = true;
+            try (Connection connection = pool.getConnection()) {
+                connection.createStatement();
+            }
+            Assert.assertTrue(created.get(0).closed);
+            Assert.assertEquals(0, pool.getIdleCount());
+            pool.getConnection().close();
+            Assert.assertEquals(2, created.size());
+        }
+    }
+
+    /**
+     * Test that no more than the size of the pool connections are handed out
+     */
+    @Test
+    public void testMaxSize() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(1, 100, () -> new FakeConnection().proxy())) {
+            try (Connection connection = pool.getConnection()) {
+                try {
+                    pool.getConnection();
+                    Assert.fail("The pool should not hand out more connections than its size.");
+                } catch (SQLException exc) {
+                    Assert.assertTrue(exc.getMessage().contains("-pool_size"));
+                }
+            }
+            pool.getConnection().close();
+        }
+    }
+}
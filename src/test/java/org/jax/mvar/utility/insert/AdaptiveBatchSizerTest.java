@@ -0,0 +1,63 @@
+package org.jax.mvar.utility.insert;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdaptiveBatchSizerTest {
+
+    private static final long MILLIS = 1_000_000L;
+
+    private double heap = 0.5;
+
+    /**
+     * Test that the batch size converges to the size committed in the target time, within the bounds
+     */
+    @Test
+    public void testCommitLatency() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100, 50000, 1000, 0.8, () -> heap);
+        Assert.assertEquals(1000, sizer.getBatchSize());
+        // 1000 rows in 100 ms: grows, at most doubling
+        Assert.assertEquals(2000, sizer.update(1000, 100 * MILLIS));
+        // 0.1 ms per row: 10000 rows take the target time
+        Assert.assertEquals(4000, sizer.update(2000, 200 * MILLIS));
+        Assert.assertEquals(8000, sizer.update(4000, 400 * MILLIS));
+        Assert.assertEquals(10000, sizer.update(8000, 800 * MILLIS));
+        Assert.assertEquals(10000, sizer.update(10000, 1000 * MILLIS));
+        // slower commits: shrinks, at most halving
+        Assert.assertEquals(5000, sizer.update(10000, 10000 * MILLIS));
+        Assert.assertEquals(4000, sizer.update(5000, 1250 * MILLIS));
+        // lower bound
+        for (int i = 0; i < 10; i++)
+            sizer.update(sizer.getBatchSize(), 60000 * MILLIS);
+        Assert.assertEquals(100, sizer.getBatchSize());
+        // upper bound
+        for (int i = 0; i < 20; i++)
+            sizer.update(sizer.getBatchSize(), MILLIS);
+        Assert.assertEquals(50000, sizer.getBatchSize());
+    }
+
+    /**
+     * Test that the batch size is halved when the heap is above the watermark, whatever the latency
+     */
+    @Test
+    public void testHeapWatermark() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100, 50000, 1000, 0.8, () -> heap);
+        Assert.assertEquals(2000, sizer.update(1000, 10 * MILLIS));
+        heap = 0.9;
+        Assert.assertEquals(1000, sizer.update(2000, 10 * MILLIS));
+        Assert.assertEquals(500, sizer.update(1000, 10 * MILLIS));
+        heap = 0.5;
+        Assert.assertEquals(1000, sizer.update(500, 10 * MILLIS));
+    }
+
+    /**
+     * Test that a fixed sizer never changes the batch size
+     */
+    @Test
+    public void testFixed() {
+        AdaptiveBatchSizer sizer = AdaptiveBatchSizer.fixed(10000);
+        Assert.assertEquals(10000, sizer.getBatchSize());
+        Assert.assertEquals(10000, sizer.update(10000, 60000 * MILLIS));
+        Assert.assertEquals(10000, sizer.update(10000, MILLIS));
+    }
+}
@@ -33,7 +33,7 @@ public class InsertUtilsTest {
         try (Connection connection = DriverManager.getConnection(config.getUrl(), config.getUser(), config.getPassword())) {
             Map<Integer, String> strainMap = ParserUtils.getStrainsFromFile(connection, new File("src/test/resources/snpgrid_samples.txt"));
 //            Map<Integer, String> strainMap = ParserUtils.getStrainsFromFile(connection, new File("src/test/resources/samples_v7.txt"));
-            List<Map> strainMaps = InsertUtils.insertIntoMvarStrain(connection, strainMap);
+            List<Map<Integer, String>> strainMaps = InsertUtils.insertIntoMvarStrain(connection, strainMap);
             InsertUtils.insertMvarStrainImputed(connection, strainMaps.get(0), strainMaps.get(1), (byte)1);
             Assert.assertTrue(true);
         } catch (SQLException exc) {
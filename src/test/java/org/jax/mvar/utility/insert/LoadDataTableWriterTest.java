@@ -0,0 +1,56 @@
+package org.jax.mvar.utility.insert;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LoadDataTableWriterTest {
+
+    /**
+     * Test that values are written in the LOAD DATA default format
+     */
+    @Test
+    public void testAppendValue() {
+        StringBuilder line = new StringBuilder();
+        LoadDataTableWriter.appendValue(line, null);
+        Assert.assertEquals("\\N", line.toString());
+
+        line.setLength(0);
+        LoadDataTableWriter.appendValue(line, true);
+        LoadDataTableWriter.appendValue(line, 42);
+        LoadDataTableWriter.appendValue(line, 7L);
+        Assert.assertEquals("1427", line.toString());
+
+        // genotype data is tab separated and must be escaped
+        line.setLength(0);
+        LoadDataTableWriter.appendValue(line, "0/0:1\t1/1:2\\x\n");
+        Assert.assertEquals("0/0:1\\t1/1:2\\\\x\\n", line.toString());
+    }
+
+    /**
+     * Test that binary values are written in hexadecimal and decoded with UNHEX in the LOAD DATA column list
+     */
+    @Test
+    public void testBinaryValue() {
+        StringBuilder line = new StringBuilder();
+        LoadDataTableWriter.appendValue(line, new byte[]{(byte) 0xE4, 0x0F, (byte) 0xFF});
+        Assert.assertEquals("E40FFF", line.toString());
+
+        Assert.assertEquals("(variant_id, imputed, strain_count, @genotypes, other_genotypes, @absent_strains)"
+                        + " SET genotypes = UNHEX(@genotypes), absent_strains = UNHEX(@absent_strains)",
+                TargetTable.VARIANT_STRAIN_PACKED.getLoadDataColumnList());
+        Assert.assertEquals(TargetTable.GENOTYPE_TEMP.getColumnList(), TargetTable.GENOTYPE_TEMP.getLoadDataColumnList());
+    }
+
+    /**
+     * Test that a binary value is rejected for a column that is not binary
+     */
+    @Test
+    public void testBinaryValueRejected() throws Exception {
+        try (LoadDataTableWriter writer = new LoadDataTableWriter(null, null)) {
+            writer.addRow(TargetTable.GENOTYPE_TEMP, 1, "GT", new byte[]{1});
+            Assert.fail("A binary value should be rejected for a text column.");
+        } catch (IllegalArgumentException exc) {
+            Assert.assertTrue(exc.getMessage().contains("genotype_data"));
+        }
+    }
+}
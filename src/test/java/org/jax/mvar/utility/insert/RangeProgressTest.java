@@ -0,0 +1,61 @@
+package org.jax.mvar.utility.insert;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+
+public class RangeProgressTest {
+
+    private File progressFile;
+
+    @Before
+    public void setUp() throws Exception {
+        progressFile = File.createTempFile("geno", ".progress");
+        progressFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        progressFile.delete();
+    }
+
+    /**
+     * Test the split of a range into work units
+     */
+    @Test
+    public void testGetRemainingUnits() throws Exception {
+        List<int[]> units = new RangeProgress(null).getRemainingUnits(1, 25, 10);
+        Assert.assertEquals(3, units.size());
+        Assert.assertArrayEquals(new int[]{1, 10}, units.get(0));
+        Assert.assertArrayEquals(new int[]{11, 20}, units.get(1));
+        Assert.assertArrayEquals(new int[]{21, 25}, units.get(2));
+        Assert.assertTrue(new RangeProgress(null).getRemainingUnits(10, 9, 10).isEmpty());
+    }
+
+    /**
+     * Test that the units recorded as done are skipped when the progress file is reloaded, even with another unit size
+     */
+    @Test
+    public void testResume() throws Exception {
+        RangeProgress progress = new RangeProgress(progressFile);
+        // the units of a resumed run are cleared before being processed, not the ones of a new run
+        Assert.assertFalse(progress.isResumed());
+        Assert.assertFalse(new RangeProgress(null).isResumed());
+        List<int[]> units = progress.getRemainingUnits(1, 40, 10);
+        progress.markDone(units.get(0));
+        progress.markDone(units.get(2));
+
+        RangeProgress resumed = new RangeProgress(progressFile);
+        Assert.assertTrue(resumed.isResumed());
+        List<int[]> remaining = resumed.getRemainingUnits(1, 40, 5);
+        Assert.assertEquals(4, remaining.size());
+        Assert.assertArrayEquals(new int[]{11, 15}, remaining.get(0));
+        Assert.assertArrayEquals(new int[]{16, 20}, remaining.get(1));
+        Assert.assertArrayEquals(new int[]{31, 35}, remaining.get(2));
+        Assert.assertArrayEquals(new int[]{36, 40}, remaining.get(3));
+    }
+}
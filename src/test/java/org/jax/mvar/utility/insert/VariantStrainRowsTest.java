@@ -0,0 +1,146 @@
+package org.jax.mvar.utility.insert;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.BatchUpdateException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class VariantStrainRowsTest {
+
+    /**
+     * In memory genotype_temp (id -> variant_id) and variant_strain ({variant_id, strain_id, imputed}) tables,
+     * queried through a fake connection understanding the queries of deleteRange
+     */
+    private static class FakeTables {
+        private final Map<Integer, Integer> genotypeTemp = new TreeMap<>();
+        private final List<int[]> variantStrain = new ArrayList<>();
+
+        private Connection connection() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> method.getName().equals("prepareStatement") ? statement((String) args[0]) : null);
+        }
+
+        private PreparedStatement statement(String sql) {
+            final Map<Integer, Integer> params = new TreeMap<>();
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "setInt":
+                                params.put((Integer) args[0], (Integer) args[1]);
+                                return null;
+                            case "setByte":
+                                params.put((Integer) args[0], (int) (Byte) args[1]);
+                                return null;
+                            case "executeQuery":
+                                // SELECT DISTINCT variant_id FROM genotype_temp WHERE id BETWEEN ? AND ?
+                                List<Integer> variantIds = new ArrayList<>();
+                                for (Map.Entry<Integer, Integer> row : genotypeTemp.entrySet()) {
+                                    if (row.getKey() >= params.get(1) && row.getKey() <= params.get(2) && !variantIds.contains(row.getValue()))
+                                        variantIds.add(row.getValue());
+                                }
+                                return resultSet(variantIds);
+                            case "executeUpdate":
+                                // DELETE FROM variant_strain WHERE imputed = ? AND variant_id IN (...) AND strain_id IN (...)
+                                int variantCount = count(sql.substring(sql.indexOf("variant_id IN"), sql.indexOf("strain_id IN")));
+                                List<Integer> values = new ArrayList<>(params.values());
+                                List<Integer> variants = values.subList(1, 1 + variantCount);
+                                List<Integer> strains = values.subList(1 + variantCount, values.size());
+                                int deleted = 0;
+                                for (Iterator<int[]> itr = variantStrain.iterator(); itr.hasNext(); ) {
+                                    int[] row = itr.next();
+                                    if (row[2] == values.get(0) && variants.contains(row[0]) && strains.contains(row[1])) {
+                                        itr.remove();
+                                        deleted++;
+                                    }
+                                }
+                                return deleted;
+                            default:
+                                return null;
+                        }
+                    });
+        }
+
+        private static int count(String sql) {
+            int count = 0;
+            for (char c : sql.toCharArray())
+                count += c == '?' ? 1 : 0;
+            return count;
+        }
+
+        private static ResultSet resultSet(List<Integer> values) {
+            final Iterator<Integer> itr = values.iterator();
+            final Integer[] current = new Integer[1];
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "next":
+                                current[0] = itr.hasNext() ? itr.next() : null;
+                                return current[0] != null;
+                            case "getInt":
+                                return current[0];
+                            default:
+                                return null;
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Test that a resumed range deletes the rows of the variants of its genotype_temp rows, and not the rows of the
+     * variants whose ids are in the range of genotype_temp ids
+     */
+    @Test
+    public void testDeleteRange() throws Exception {
+        Map<Integer, String> strains = new LinkedHashMap<>();
+        strains.put(10, "A");
+        strains.put(11, "B");
+        VariantStrainRows rows = new VariantStrainRows(strains, Collections.emptyMap(), (byte) 0, 1, false);
+
+        FakeTables tables = new FakeTables();
+        // genotype_temp ids 1 to 3 are the variants 501 and 733
+        tables.genotypeTemp.put(1, 501);
+        tables.genotypeTemp.put(2, 733);
+        tables.genotypeTemp.put(3, 733);
+        tables.genotypeTemp.put(4, 2);
+        tables.variantStrain.add(new int[]{501, 10, 0});
+        tables.variantStrain.add(new int[]{733, 11, 0});
+        // variant 2 is in the range of genotype_temp ids but not a variant of the range
+        tables.variantStrain.add(new int[]{2, 10, 0});
+        // other imputed value and other strain
+        tables.variantStrain.add(new int[]{501, 10, 1});
+        tables.variantStrain.add(new int[]{733, 12, 0});
+
+        Assert.assertEquals(2, rows.deleteRange(tables.connection(), 1, 3));
+        Assert.assertEquals(3, tables.variantStrain.size());
+        Assert.assertArrayEquals(new int[]{2, 10, 0}, tables.variantStrain.get(0));
+        Assert.assertArrayEquals(new int[]{501, 10, 1}, tables.variantStrain.get(1));
+        Assert.assertArrayEquals(new int[]{733, 12, 0}, tables.variantStrain.get(2));
+    }
+
+    /**
+     * Test the detection of the duplicate key errors of the packed rows, as thrown by a JDBC batch
+     */
+    @Test
+    public void testIsDuplicateKey() {
+        SQLException duplicate = new SQLIntegrityConstraintViolationException("Duplicate entry '501-1' for key 'PRIMARY'", "23000", 1062);
+        Assert.assertTrue(VariantStrainRows.isDuplicateKey(duplicate));
+        Assert.assertTrue(VariantStrainRows.isDuplicateKey(new BatchUpdateException("batch", "23000", 1062, new int[0], null)));
+        BatchUpdateException batch = new BatchUpdateException("batch", new int[0]);
+        batch.setNextException(duplicate);
+        Assert.assertTrue(VariantStrainRows.isDuplicateKey(batch));
+        Assert.assertFalse(VariantStrainRows.isDuplicateKey(new SQLException("Lock wait timeout exceeded", "HY000", 1205)));
+    }
+}
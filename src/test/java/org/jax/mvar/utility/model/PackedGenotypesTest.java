@@ -0,0 +1,93 @@
+package org.jax.mvar.utility.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PackedGenotypesTest {
+
+    /**
+     * Test the 2-bit class of the GT values
+     */
+    @Test
+    public void testClassify() {
+        Assert.assertEquals(PackedGenotypes.REF, PackedGenotypes.classify("0/0"));
+        Assert.assertEquals(PackedGenotypes.REF, PackedGenotypes.classify("0|0"));
+        Assert.assertEquals(PackedGenotypes.HET, PackedGenotypes.classify("0/1"));
+        Assert.assertEquals(PackedGenotypes.HET, PackedGenotypes.classify("1/2"));
+        Assert.assertEquals(PackedGenotypes.HOM_ALT, PackedGenotypes.classify("1/1"));
+        Assert.assertEquals(PackedGenotypes.HOM_ALT, PackedGenotypes.classify("12|12"));
+        Assert.assertEquals(PackedGenotypes.HOM_ALT, PackedGenotypes.classify("1"));
+        Assert.assertEquals(PackedGenotypes.MISSING, PackedGenotypes.classify("./."));
+        Assert.assertEquals(PackedGenotypes.MISSING, PackedGenotypes.classify("./1"));
+        Assert.assertEquals(PackedGenotypes.MISSING, PackedGenotypes.classify("."));
+    }
+
+    /**
+     * Test that the genotypes decoded from the bytes and the sidecar are the genotypes packed
+     */
+    @Test
+    public void testRoundTrip() {
+        String[] gts = new String[]{"0/0", "0/1", "1/1", "./.", "1/2", "0|1", "0/0", "2/2", "./."};
+        PackedGenotypes genotypes = new PackedGenotypes(gts.length);
+        for (int i = 0; i < gts.length; i++) {
+            genotypes.set(i, gts[i]);
+        }
+        byte[] bytes = genotypes.toBytes();
+        Assert.assertEquals(3, bytes.length);
+        // strains 0 to 3: 0/0, 0/1, 1/1, ./. -> 0b11_10_01_00
+        Assert.assertEquals((byte) 0xE4, bytes[0]);
+        Assert.assertEquals("4:1/2,5:0|1,7:2/2", genotypes.getOtherGenotypes());
+
+        PackedGenotypes decoded = PackedGenotypes.decode(bytes, gts.length, genotypes.getOtherGenotypes(), genotypes.getAbsentMask());
+        Assert.assertEquals(gts.length, decoded.size());
+        for (int i = 0; i < gts.length; i++) {
+            Assert.assertEquals(gts[i], decoded.get(i));
+        }
+        Assert.assertEquals(PackedGenotypes.HET, decoded.getCode(4));
+        Assert.assertEquals(PackedGenotypes.HOM_ALT, decoded.getCode(7));
+    }
+
+    /**
+     * Test that the strains not set are missing and that a canonical GT replaces an uncommon one
+     */
+    @Test
+    public void testDefaults() {
+        PackedGenotypes genotypes = new PackedGenotypes(5);
+        Assert.assertEquals("./.", genotypes.get(4));
+        Assert.assertNull(genotypes.getOtherGenotypes());
+        genotypes.set(2, "1|1");
+        Assert.assertEquals("2:1|1", genotypes.getOtherGenotypes());
+        genotypes.set(2, "1/1");
+        Assert.assertNull(genotypes.getOtherGenotypes());
+        Assert.assertEquals(PackedGenotypes.MISSING, genotypes.getCode(1));
+    }
+
+    /**
+     * Test that the absent strains are told apart from the missing genotypes, and the limit of strains per row
+     */
+    @Test
+    public void testAbsent() {
+        PackedGenotypes genotypes = new PackedGenotypes(10);
+        genotypes.set(0, "./.");
+        genotypes.setAbsent(9);
+        genotypes.setAbsent(3);
+        genotypes.set(3, "0/1");
+        byte[] mask = genotypes.getAbsentMask();
+        Assert.assertArrayEquals(new byte[]{0, 2}, mask);
+
+        PackedGenotypes decoded = PackedGenotypes.decode(genotypes.toBytes(), 10, null, mask);
+        Assert.assertEquals("./.", decoded.get(0));
+        Assert.assertFalse(decoded.isAbsent(0));
+        Assert.assertTrue(decoded.isAbsent(9));
+        Assert.assertNull(decoded.get(9));
+        Assert.assertEquals("0/1", decoded.get(3));
+        Assert.assertNull(new PackedGenotypes(10).getAbsentMask());
+
+        try {
+            new PackedGenotypes(PackedGenotypes.MAX_SIZE + 1);
+            Assert.fail("No more than MAX_SIZE strains should be packed.");
+        } catch (IllegalArgumentException exc) {
+            Assert.assertTrue(exc.getMessage().contains("16384"));
+        }
+    }
+}
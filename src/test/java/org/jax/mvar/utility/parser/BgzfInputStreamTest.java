@@ -0,0 +1,99 @@
+package org.jax.mvar.utility.parser;
+
+import org.jax.mvar.utility.model.Variant;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+public class BgzfInputStreamTest {
+
+    private static final File VCF_FILE = new File("src/test/resources/variant_test.vcf");
+    private static final List<String> REF_TXTS = Arrays.asList("1_3421849_C_T", "1_3670629_G_C", "1_3670967_T_C", "4_11521167_C_T", "14_66046191_C_T");
+
+    /**
+     * Test that a bgzipped file is decompressed in order with several threads
+     */
+    @Test
+    public void testDecompression() throws Exception {
+        byte[] data = Files.readAllBytes(VCF_FILE.toPath());
+        File bgzfFile = File.createTempFile("variant_test", ".vcf.gz");
+        bgzfFile.deleteOnExit();
+        writeBgzf(data, bgzfFile, 1000);
+
+        Assert.assertTrue(BgzfInputStream.isBgzf(bgzfFile));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream is = new BgzfInputStream(new FileInputStream(bgzfFile), 3)) {
+            byte[] buffer = new byte[777];
+            int read;
+            while ((read = is.read(buffer)) != -1)
+                out.write(buffer, 0, read);
+        }
+        Assert.assertArrayEquals(data, out.toByteArray());
+
+        // parse the bgzipped file with several threads
+        List<String> refTxts = new ArrayList<>();
+        try (VariantSource source = VcfParser.openVcf(bgzfFile, VCF_FILE, 3)) {
+            Variant var;
+            while ((var = source.next()) != null)
+                refTxts.add(var.getVariantRefTxt());
+        }
+        Assert.assertEquals(REF_TXTS, refTxts);
+    }
+
+    /**
+     * Test that a plain gzip file is not detected as BGZF
+     */
+    @Test
+    public void testPlainGzip() throws Exception {
+        File gzFile = File.createTempFile("variant_test", ".vcf.gz");
+        gzFile.deleteOnExit();
+        try (OutputStream os = new GZIPOutputStream(new FileOutputStream(gzFile))) {
+            os.write(Files.readAllBytes(VCF_FILE.toPath()));
+        }
+        Assert.assertFalse(BgzfInputStream.isBgzf(gzFile));
+    }
+
+    /**
+     * Writes the data as BGZF blocks of at most blockSize uncompressed bytes, followed by the empty EOF block
+     */
+    static void writeBgzf(byte[] data, File file, int blockSize) throws IOException {
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file))) {
+            for (int offset = 0; offset < data.length; offset += blockSize) {
+                writeBlock(os, data, offset, Math.min(blockSize, data.length - offset));
+            }
+            writeBlock(os, data, 0, 0);
+        }
+    }
+
+    private static void writeBlock(OutputStream os, byte[] data, int offset, int length) throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        byte[] compressed = new byte[length + 1024];
+        int compressedLength = deflater.deflate(compressed);
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+
+        int blockSize = 18 + compressedLength + 8;
+        byte[] header = {31, (byte) 139, 8, 4, 0, 0, 0, 0, 0, (byte) 255, 6, 0, 'B', 'C', 2, 0,
+                (byte) (blockSize - 1), (byte) ((blockSize - 1) >> 8)};
+        os.write(header);
+        os.write(compressed, 0, compressedLength);
+        writeInt(os, (int) crc.getValue());
+        writeInt(os, length);
+    }
+
+    private static void writeInt(OutputStream os, int value) throws IOException {
+        os.write(value);
+        os.write(value >> 8);
+        os.write(value >> 16);
+        os.write(value >> 24);
+    }
+}
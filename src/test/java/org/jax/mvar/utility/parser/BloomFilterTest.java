@@ -0,0 +1,38 @@
+package org.jax.mvar.utility.parser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BloomFilterTest {
+
+    /**
+     * Test that the added keys are always found and that the false positive rate is close to the expected one
+     */
+    @Test
+    public void testMightContain() {
+        BloomFilter filter = new BloomFilter(100000, 0.01);
+        Assert.assertEquals(7, filter.getHashCount());
+        for (int i = 0; i < 100000; i++) {
+            filter.add("1_" + (3000000 + i) + "_A_T");
+        }
+        for (int i = 0; i < 100000; i++) {
+            Assert.assertTrue(filter.mightContain("1_" + (3000000 + i) + "_A_T"));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain("2_" + (3000000 + i) + "_A_T"))
+                falsePositives++;
+        }
+        Assert.assertTrue("False positives: " + falsePositives, falsePositives < 2000);
+    }
+
+    /**
+     * Test that the hash depends on all the characters of the key
+     */
+    @Test
+    public void testHash() {
+        Assert.assertEquals(BloomFilter.hash64("1_3000000_A_T"), BloomFilter.hash64(new StringBuilder("1_3000000_A_T")));
+        Assert.assertNotEquals(BloomFilter.hash64("1_3000000_A_T"), BloomFilter.hash64("1_3000000_A_G"));
+        Assert.assertNotEquals(BloomFilter.hash64("1_3000000_A_T"), BloomFilter.hash64("1_3000000_T_A"));
+    }
+}
@@ -0,0 +1,109 @@
+package org.jax.mvar.utility.parser;
+
+import org.jax.mvar.utility.model.Variant;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class CanonicalClaimsTest {
+
+    private static Map<String, Variant> batch(int... positions) {
+        Map<String, Variant> variations = new LinkedHashMap<>();
+        for (int pos : positions) {
+            Variant variant = new Variant("1", String.valueOf(pos), ".", "A", "T", ".", "PASS", "GT", "", "", "", "", "0/1");
+            variations.put(variant.getVariantRefTxt(), variant);
+        }
+        return variations;
+    }
+
+    /**
+     * Test that the variants claimed by a batch not yet committed are reused by a second batch, and that they are
+     * claimed again once committed
+     */
+    @Test
+    public void testClaim() throws Exception {
+        CanonicalClaims claims = new CanonicalClaims();
+        AtomicInteger nextId = new AtomicInteger(100);
+
+        Map<String, Variant> first = batch(1, 2, 3);
+        CanonicalClaim firstClaim = claims.claim(first, nextId::getAndAdd);
+        Assert.assertEquals(100, firstClaim.getFirstNewId());
+        Assert.assertEquals(3, claims.size());
+
+        // 2 and 3 are in flight: they get the ids of the first batch, only 4 is new
+        Map<String, Variant> second = batch(2, 3, 4);
+        CanonicalClaim secondClaim = claims.claim(second, nextId::getAndAdd);
+        Assert.assertEquals(103, secondClaim.getFirstNewId());
+        Variant two = second.get("1_2_A_T");
+        Assert.assertTrue(two.getExists());
+        Assert.assertEquals(101, two.getExistingId());
+        Assert.assertEquals(102, second.get("1_3_A_T").getExistingId());
+        Assert.assertFalse(second.get("1_4_A_T").getExists());
+        Assert.assertEquals(104, nextId.get());
+
+        // once the first batch is committed, its variants are found by the lookups: their claims are released
+        claims.commit(firstClaim);
+        Assert.assertTrue(claims.await(secondClaim).isEmpty());
+        claims.commit(secondClaim);
+        Assert.assertEquals(0, claims.size());
+        Map<String, Variant> third = batch(1);
+        Assert.assertEquals(104, claims.claim(third, nextId::getAndAdd).getFirstNewId());
+        Assert.assertFalse(third.get("1_1_A_T").getExists());
+    }
+
+    /**
+     * Test that the variants of an abandoned claim are taken over, with their ids, by the first batch reusing them,
+     * and that the other batches wait for that batch
+     */
+    @Test
+    public void testAbandon() throws Exception {
+        CanonicalClaims claims = new CanonicalClaims();
+        AtomicInteger nextId = new AtomicInteger(100);
+
+        CanonicalClaim firstClaim = claims.claim(batch(1, 2), nextId::getAndAdd);
+        Map<String, Variant> second = batch(2, 3);
+        CanonicalClaim secondClaim = claims.claim(second, nextId::getAndAdd);
+        Map<String, Variant> third = batch(2);
+        final CanonicalClaim thirdClaim = claims.claim(third, nextId::getAndAdd);
+        Assert.assertEquals(101, third.get("1_2_A_T").getExistingId());
+
+        // the first batch failed: the second batch inserts 2 with the id reserved for it
+        claims.abandon(firstClaim);
+        claims.abandon(firstClaim);
+        List<Variant> adopted = claims.await(secondClaim);
+        Assert.assertEquals(1, adopted.size());
+        Variant two = second.get("1_2_A_T");
+        Assert.assertTrue(two == adopted.get(0));
+        Assert.assertFalse(two.getExists());
+        Assert.assertEquals(101, two.getExistingId());
+        Assert.assertTrue(secondClaim.isAdopted(two));
+        Assert.assertFalse(secondClaim.isAdopted(second.get("1_3_A_T")));
+        // 1 is released, 2 is now claimed by the second batch
+        Assert.assertEquals(2, claims.size());
+
+        // the third batch waits for the second one
+        final AtomicReference<List<Variant>> awaited = new AtomicReference<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                awaited.set(claims.await(thirdClaim));
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        waiter.join(200);
+        Assert.assertNull(awaited.get());
+        claims.commit(secondClaim);
+        waiter.join(10_000);
+        Assert.assertTrue(awaited.get().isEmpty());
+        Assert.assertTrue(third.get("1_2_A_T").getExists());
+        Assert.assertEquals(101, third.get("1_2_A_T").getExistingId());
+        claims.commit(thirdClaim);
+        Assert.assertEquals(0, claims.size());
+    }
+}
@@ -0,0 +1,67 @@
+package org.jax.mvar.utility.parser;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+public class CanonicalKeyIndexTest {
+
+    private File indexFile;
+
+    @Before
+    public void setUp() throws Exception {
+        indexFile = File.createTempFile("canon", ".idx");
+        indexFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        indexFile.delete();
+    }
+
+    /**
+     * Test adding variants (past the initial capacity) and reading them back once the index is reopened
+     */
+    @Test
+    public void testPutAndGet() throws Exception {
+        try (CanonicalKeyIndex index = CanonicalKeyIndex.open(indexFile)) {
+            for (int i = 0; i < 100000; i++) {
+                index.put("1_" + (3000000 + i) + "_A_T", i + 1);
+            }
+            // update of an existing variant
+            index.put("1_3000000_A_T", 5);
+            Assert.assertEquals(100000, index.size());
+            Assert.assertEquals(5, index.get("1_3000000_A_T"));
+            Assert.assertEquals(-1, index.get("1_3000000_A_G"));
+        }
+        try (CanonicalKeyIndex index = CanonicalKeyIndex.open(indexFile)) {
+            Assert.assertEquals(100000, index.size());
+            Assert.assertEquals(0, index.getLastSyncedId());
+            for (int i = 1; i < 100000; i++) {
+                Assert.assertEquals(i + 1, index.get("1_" + (3000000 + i) + "_A_T"));
+            }
+            Assert.assertEquals(-1, index.get("2_3000000_A_T"));
+        }
+    }
+
+    /**
+     * Test opening a file that is not an index
+     */
+    @Test
+    public void testInvalidFile() throws Exception {
+        try (FileOutputStream out = new FileOutputStream(indexFile)) {
+            out.write(new byte[100]);
+        }
+        try {
+            CanonicalKeyIndex.open(indexFile).close();
+            Assert.fail("A file that is not an index should not be opened.");
+        } catch (IOException exc) {
+            Assert.assertTrue(exc.getMessage().contains("please rebuild it"));
+        }
+    }
+}
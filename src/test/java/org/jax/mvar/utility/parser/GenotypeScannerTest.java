@@ -0,0 +1,61 @@
+package org.jax.mvar.utility.parser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class GenotypeScannerTest {
+
+    /**
+     * Test the GT codes of a genotype block, read as bytes or as a string
+     */
+    @Test
+    public void testScan() {
+        String block = "0/0:10,0:10:30\t0/1:5,5:10:99\t1|1:0,12:12:36\t./.:0,0:0:0\t1/2\t12/3:1,1\t0/0:1";
+        GenotypeScanner scanner = new GenotypeScanner();
+        String[] expected = new String[]{"0/0", "0/1", "1|1", "./.", "1/2", "12/3", "0/0"};
+        for (int pass = 0; pass < 2; pass++) {
+            int count = pass == 0 ? scanner.scan(block.getBytes(StandardCharsets.US_ASCII)) : scanner.scan(block);
+            Assert.assertEquals(expected.length, count);
+            int[] codes = scanner.getCodes();
+            for (int i = 0; i < count; i++) {
+                Assert.assertEquals(expected[i], scanner.getGenotype(codes[i]));
+            }
+            Assert.assertEquals(GenotypeScanner.HOM_REF, codes[0]);
+            Assert.assertEquals(GenotypeScanner.HOM_REF, codes[6]);
+            Assert.assertNotEquals(GenotypeScanner.HOM_REF, codes[1]);
+            // the codes of the uncommon GTs are kept between scans
+            Assert.assertTrue(codes[5] >= 256);
+        }
+    }
+
+    /**
+     * Test that the codes array grows with the number of samples and that a trailing tab adds no sample
+     */
+    @Test
+    public void testManySamples() {
+        StringBuilder block = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            block.append(i % 2 == 0 ? "0/0:1" : "1/1:2").append('\t');
+        }
+        GenotypeScanner scanner = new GenotypeScanner();
+        Assert.assertEquals(3000, scanner.scan(block));
+        Assert.assertEquals("1/1", scanner.getGenotype(scanner.getCodes()[2999]));
+        Assert.assertEquals(0, scanner.scan(""));
+    }
+
+    /**
+     * Test that the number of samples is the number of values given by String.split when the block ends with
+     * empty samples, and that empty samples in the middle are kept
+     */
+    @Test
+    public void testTrailingEmptySamples() {
+        GenotypeScanner scanner = new GenotypeScanner();
+        for (String block : new String[]{"0/1:1\t1/1:2\t\t", "0/1\t\t1/1\t\t\t", "0/1:1\t1/1", "\t0/1", "0/1\t\t\t\t"}) {
+            Assert.assertEquals(block, block.split("\t").length, scanner.scan(block));
+        }
+        Assert.assertEquals(3, scanner.scan("0/1\t\t1/1\t"));
+        Assert.assertEquals("1/1", scanner.getGenotype(scanner.getCodes()[2]));
+    }
+}
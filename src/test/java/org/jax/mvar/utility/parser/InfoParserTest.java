@@ -0,0 +1,55 @@
+package org.jax.mvar.utility.parser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+public class InfoParserTest {
+
+    private static final File VCF_FILE = new File("src/test/resources/variant_test.vcf");
+
+    private static final String INFO = "AC=10;ANN=T|missense_variant|MODERATE|Virma|66185|transcript|ENSMUST00000055372.13|Coding|10/13|c.2573C>T|p.(A858V)|2658/41664|2573/3420|858/1140||," +
+            "T|missense_variant|MODERATE|Virma|66185|transcript|ENSMUST00000108307.2|Coding|11/25|c.2723C>T|p.(A908V)|2723/64642|2723/5586|908/1862||;DP=2496;DP4=1243,1018,147,88";
+
+    /**
+     * Test the ANN annotations parsed from an INFO string
+     */
+    @Test
+    public void testParseAnnotations() throws Exception {
+        AnnotationParser parser = new AnnotationParser(VCF_FILE);
+        List<Annotation> annotations = parser.parse(INFO);
+        Assert.assertEquals(2, annotations.size());
+        Assert.assertEquals(16, annotations.get(0).size());
+        Assert.assertEquals("Virma", annotations.get(0).get("Gene_Name"));
+        Assert.assertEquals("ENSMUST00000055372.13", annotations.get(0).get("Feature_ID"));
+        Assert.assertEquals("p.(A908V)", annotations.get(1).get("HGVS.p"));
+        Assert.assertEquals("T", annotations.get(1).get(0));
+        // last field
+        Assert.assertEquals("", annotations.get(1).get("ERRORS / WARNINGS / INFO"));
+        Assert.assertEquals(3, parser.getAnnotationKeyIndex("Gene_Name"));
+        Assert.assertEquals(-1, parser.getAnnotationKeyIndex("Unknown"));
+        Assert.assertNull(annotations.get(0).get("Unknown"));
+
+        try {
+            parser.parse("ANN=T|missense_variant|MODERATE");
+            Assert.fail("An annotation with missing fields should not be parsed.");
+        } catch (IllegalArgumentException exc) {
+            Assert.assertEquals("Expecting ANN identifier to have 16 blocks. Had 3 instead.", exc.getMessage());
+        }
+    }
+
+    /**
+     * Test the single value and DP4 annotations
+     */
+    @Test
+    public void testParseDP() throws Exception {
+        Assert.assertEquals("2496", new DPParser(VCF_FILE).parse(INFO).get(0).get("Raw read depth"));
+        Annotation dp4 = new DP4Parser(VCF_FILE).parse("DP4=1243,1018,147,88").get(0);
+        Assert.assertEquals(Arrays.asList("1243", "1018", "147", "88"),
+                Arrays.asList(dp4.get("ref-fwd"), dp4.get("ref-reverse"), dp4.get("alt-fwd"), dp4.get("alt-reverse")));
+        Assert.assertNull(new DPParser(VCF_FILE).parse("AC=10").get(0).get("Raw read depth"));
+    }
+}
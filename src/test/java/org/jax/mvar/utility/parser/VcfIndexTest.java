@@ -0,0 +1,68 @@
+package org.jax.mvar.utility.parser;
+
+import org.jax.mvar.utility.model.Variant;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class VcfIndexTest {
+
+    private static final File VCF_FILE = new File("src/test/resources/variant_test.vcf");
+    private static final List<String> REF_TXTS = Arrays.asList("1_3421849_C_T", "1_3670629_G_C", "1_3670967_T_C", "4_11521167_C_T", "14_66046191_C_T");
+
+    private File bgzfFile;
+
+    @Before
+    public void setUp() throws Exception {
+        bgzfFile = File.createTempFile("variant_test", ".vcf.gz");
+        bgzfFile.deleteOnExit();
+        VcfIndex.getIndexFile(bgzfFile).deleteOnExit();
+        // small blocks so that records span several blocks
+        BgzfInputStreamTest.writeBgzf(Files.readAllBytes(VCF_FILE.toPath()), bgzfFile, 1000);
+        VcfIndex.build(bgzfFile, 2).write(bgzfFile);
+    }
+
+    /**
+     * Test reading regions of an indexed file
+     */
+    @Test
+    public void testRegions() throws Exception {
+        Assert.assertEquals(Arrays.asList("1", "4", "14"), new ArrayList<>(VcfIndex.load(bgzfFile).getChromosomes()));
+        Assert.assertEquals(REF_TXTS.subList(1, 3), readRegion(Region.parse("1:3670000-3671000")));
+        Assert.assertEquals(REF_TXTS.subList(3, 4), readRegion(Region.parse("chr4")));
+        Assert.assertEquals(REF_TXTS.subList(4, 5), readRegion(Region.parse("14:66046191-66046191")));
+        Assert.assertEquals(REF_TXTS.subList(0, 3), readRegion(Region.parse("1:1-")));
+        Assert.assertTrue(readRegion(Region.parse("1:3670968-3700000")).isEmpty());
+        Assert.assertTrue(readRegion(Region.parse("2")).isEmpty());
+    }
+
+    /**
+     * Test that the shards cover all the records exactly once
+     */
+    @Test
+    public void testShards() throws Exception {
+        List<Region> shards = VcfIndex.load(bgzfFile).getShards(4);
+        Assert.assertTrue(shards.size() >= 3);
+        List<String> refTxts = new ArrayList<>();
+        for (Region shard : shards) {
+            refTxts.addAll(readRegion(shard));
+        }
+        Assert.assertEquals(REF_TXTS, refTxts);
+    }
+
+    private List<String> readRegion(Region region) throws Exception {
+        List<String> refTxts = new ArrayList<>();
+        try (VariantSource source = VcfParser.openVcf(bgzfFile, VCF_FILE, region, 2)) {
+            Variant var;
+            while ((var = source.next()) != null)
+                refTxts.add(var.getVariantRefTxt());
+        }
+        return refTxts;
+    }
+}
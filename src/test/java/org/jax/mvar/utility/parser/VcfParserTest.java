@@ -5,6 +5,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -46,4 +47,45 @@ public class VcfParserTest {
         }
     }
 
+    /**
+     * Test that the variant source streams the variants batch by batch in file order
+     */
+    @Test
+    public void testVariantSource() throws Exception {
+        File vcfFile = new File("src/test/resources/variant_test.vcf");
+        List<Integer> batchSizes = new ArrayList<>();
+        int idx = 0;
+        try (VariantSource source = VcfParser.openVcf(vcfFile, vcfFile)) {
+            Map<String, Variant> batch;
+            while (!(batch = source.nextBatch(2)).isEmpty()) {
+                batchSizes.add(batch.size());
+                for (String refTxt : batch.keySet()) {
+                    Assert.assertEquals(REF_TXTS.get(idx), refTxt);
+                    idx++;
+                }
+            }
+            Assert.assertEquals(5, source.getCount());
+        }
+        Assert.assertEquals(Arrays.asList(2, 2, 1), batchSizes);
+    }
+
+    /**
+     * Test the memory mapped reader with small chunks (smaller than the lines) parsed in parallel:
+     * the variants must come out in file order.
+     */
+    @Test
+    public void testMappedVcfSource() throws Exception {
+        File vcfFile = new File("src/test/resources/variant_test.vcf");
+        ConsequenceParser infoParser = new ConsequenceParser(vcfFile);
+        try (VariantSource source = new MappedVcfSource(vcfFile, infoParser, 3, 1024)) {
+            Map<String, Variant> variations = source.nextBatch(Integer.MAX_VALUE);
+            Assert.assertEquals(REF_TXTS, new ArrayList<>(variations.keySet()));
+            int idx = 0;
+            for (Variant variant : variations.values()) {
+                Assert.assertEquals(PROTEIN_POSITIONS.get(idx), variant.getProteinPosition());
+                idx++;
+            }
+        }
+    }
+
 }
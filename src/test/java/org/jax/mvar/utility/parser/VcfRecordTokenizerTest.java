@@ -0,0 +1,60 @@
+package org.jax.mvar.utility.parser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+public class VcfRecordTokenizerTest {
+
+    private static final String LINE = "chr1\t3421849\t.\tC\tT\t999\tPASS\tAC=44;ANNOT=x;ANN=T|missense_variant;CSQ=T|missense;DB\tGT:AD\t1/1:0,25\t0/0:60,1";
+
+    /**
+     * Test the fields located by the tokenizer
+     */
+    @Test
+    public void testTokenize() {
+        // the line is tokenized in place, after some other data in the buffer
+        byte[] buffer = ("#CHROM\n" + LINE).getBytes(StandardCharsets.UTF_8);
+        VcfRecordTokenizer record = new VcfRecordTokenizer();
+        record.tokenize(buffer, 7, buffer.length - 7);
+
+        Assert.assertFalse(record.isHeader());
+        Assert.assertEquals(10, record.getFieldCount());
+        Assert.assertEquals("chr1", record.getString(VcfRecordTokenizer.CHROM));
+        Assert.assertTrue(record.isChromosome("1"));
+        Assert.assertFalse(record.isChromosome("11"));
+        Assert.assertEquals(3421849, record.getInt(VcfRecordTokenizer.POS));
+        Assert.assertTrue(record.isMissing(VcfRecordTokenizer.ID));
+        Assert.assertFalse(record.isMissing(VcfRecordTokenizer.REF));
+        Assert.assertEquals("GT:AD", record.getString(VcfRecordTokenizer.FORMAT));
+        // the sample columns are one field
+        Assert.assertEquals("1/1:0,25\t0/0:60,1", record.getString(VcfRecordTokenizer.SAMPLES));
+
+        Assert.assertEquals("ANN=T|missense_variant", record.getInfoEntry("ANN"));
+        Assert.assertEquals("CSQ=T|missense", record.getInfoEntry("CSQ"));
+        Assert.assertEquals("DB", record.getInfoEntry("DB"));
+        Assert.assertNull(record.getInfoEntry("AN"));
+
+        record.tokenize(buffer, 0, 6);
+        Assert.assertTrue(record.isHeader());
+        Assert.assertEquals(1, record.getFieldCount());
+    }
+
+    /**
+     * Test reading lines longer than the buffer, with "\n" and "\r\n" terminators
+     */
+    @Test
+    public void testByteLineReader() throws Exception {
+        String data = LINE + "\r\n\n" + LINE + LINE + "\nlast";
+        ByteLineReader reader = new ByteLineReader(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)), 16);
+        String[] expected = {LINE, "", LINE + LINE, "last"};
+        for (String line : expected) {
+            Assert.assertTrue(reader.readLine());
+            Assert.assertEquals(line, new String(reader.getBuffer(), reader.getLineStart(), reader.getLineLength(), StandardCharsets.UTF_8));
+        }
+        Assert.assertFalse(reader.readLine());
+        reader.close();
+    }
+}